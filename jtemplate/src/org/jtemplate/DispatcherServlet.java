@@ -14,14 +14,22 @@
 
 package org.jtemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -35,9 +43,18 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -60,19 +77,533 @@ public abstract class DispatcherServlet extends HttpServlet {
         }
     }
 
-    private Resource root = null;
+    // Handler; contains a handler method, a converter for each of its
+    // parameters, and an invoker that is pre-bound to the servlet instance
+    private static class Handler {
+        public final Method method;
+        public final String[] parameterNames;
+
+        private ArgumentConverter[] argumentConverters;
+
+        private Object servlet;
+        private MethodHandle invoker;
+
+        public Handler(Method method, Object servlet) {
+            this.method = method;
+
+            Parameter[] parameters = method.getParameters();
+
+            parameterNames = new String[parameters.length];
+            argumentConverters = new ArgumentConverter[parameters.length];
+
+            for (int i = 0; i < parameters.length; i++) {
+                parameterNames[i] = parameters[i].getName();
+                argumentConverters[i] = createArgumentConverter(parameters[i]);
+            }
+
+            this.servlet = servlet;
+
+            // Handlers that can't be unreflected are invoked via reflection
+            try {
+                invoker = MethodHandles.publicLookup().unreflect(method)
+                    .bindTo(servlet)
+                    .asSpreader(Object[].class, parameters.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (IllegalAccessException exception) {
+                invoker = null;
+            }
+        }
+
+        public Object[] getArguments(HashMap<String, LinkedList<String>> parameterMap,
+            HashMap<String, LinkedList<File>> fileMap) throws IOException {
+            Object[] arguments = new Object[argumentConverters.length];
+
+            for (int i = 0; i < argumentConverters.length; i++) {
+                arguments[i] = argumentConverters[i].getArgument(parameterMap, fileMap);
+            }
+
+            return arguments;
+        }
+
+        public Object invoke(Object[] arguments) throws Throwable {
+            if (invoker != null) {
+                return (Object)invoker.invokeExact(arguments);
+            } else {
+                try {
+                    return method.invoke(servlet, arguments);
+                } catch (InvocationTargetException exception) {
+                    throw exception.getCause();
+                }
+            }
+        }
+    }
+
+    // Argument converter; produces a handler argument from the request's
+    // parameters and files
+    private static abstract class ArgumentConverter {
+        public abstract Object getArgument(HashMap<String, LinkedList<String>> parameterMap,
+            HashMap<String, LinkedList<File>> fileMap) throws IOException;
+    }
+
+    // Handler set; contains the handlers for a single resource and verb, along
+    // with an index of their parameter names
+    private static class HandlerSet {
+        public final Handler[] handlers;
+
+        private String[][] parameterNames;
+
+        private HashMap<String, Integer> bitIndices = new HashMap<>();
+        private long[] masks;
+
+        private ConcurrentHashMap<Long, Integer> selections = new ConcurrentHashMap<>();
+
+        public HandlerSet(List<Method> handlerList, Object servlet) {
+            handlers = new Handler[handlerList.size()];
+
+            parameterNames = new String[handlers.length][];
+
+            int i = 0;
+
+            for (Method method : handlerList) {
+                handlers[i] = new Handler(method, servlet);
+
+                parameterNames[i] = handlers[i].parameterNames;
+
+                for (int j = 0; j < parameterNames[i].length; j++) {
+                    String name = parameterNames[i][j];
+
+                    if (!bitIndices.containsKey(name)) {
+                        bitIndices.put(name, bitIndices.size());
+                    }
+                }
+
+                i++;
+            }
+
+            // Parameter masks are used only when every name can be assigned a bit
+            if (bitIndices.size() <= Long.SIZE) {
+                masks = new long[handlers.length];
+
+                for (i = 0; i < handlers.length; i++) {
+                    for (int j = 0; j < parameterNames[i].length; j++) {
+                        masks[i] |= 1L << bitIndices.get(parameterNames[i][j]);
+                    }
+                }
+            }
+        }
+
+        public Handler getHandler(Set<String> parameterNames, Set<String> fileNames) {
+            // A handler matches only if every argument name is one of its parameters
+            long mask = 0;
+
+            for (String name : parameterNames) {
+                Integer bitIndex = bitIndices.get(name);
+
+                if (bitIndex == null) {
+                    return null;
+                }
+
+                mask |= 1L << bitIndex;
+            }
+
+            for (String name : fileNames) {
+                Integer bitIndex = bitIndices.get(name);
+
+                if (bitIndex == null || parameterNames.contains(name)) {
+                    return null;
+                }
+
+                mask |= 1L << bitIndex;
+            }
+
+            int i;
+            if (masks != null) {
+                Integer selection = selections.get(mask);
+
+                if (selection == null) {
+                    selection = select(mask);
+
+                    if (selections.size() < MAXIMUM_SELECTION_COUNT) {
+                        selections.put(mask, selection);
+                    }
+                }
+
+                i = selection;
+            } else {
+                i = select(parameterNames, fileNames);
+            }
+
+            return (i == -1) ? null : handlers[i];
+        }
+
+        private int select(long mask) {
+            // Prefer the handler with the fewest unmatched parameters; ties
+            // are resolved in declaration order
+            int selection = -1;
+            int k = Integer.MAX_VALUE;
+
+            for (int i = 0; i < handlers.length; i++) {
+                if ((masks[i] & mask) == mask) {
+                    int j = Long.bitCount(masks[i] & ~mask);
+
+                    if (j < k) {
+                        selection = i;
+
+                        k = j;
+                    }
+                }
+            }
+
+            return selection;
+        }
+
+        private int select(Set<String> parameterNames, Set<String> fileNames) {
+            int n = parameterNames.size() + fileNames.size();
+
+            int selection = -1;
+            int k = Integer.MAX_VALUE;
+
+            for (int i = 0; i < handlers.length; i++) {
+                String[] names = this.parameterNames[i];
+
+                int j = 0;
+
+                for (int l = 0; l < names.length; l++) {
+                    if (!(parameterNames.contains(names[l]) || fileNames.contains(names[l]))) {
+                        j++;
+                    }
+                }
+
+                if (names.length - j == n && j < k) {
+                    selection = i;
+
+                    k = j;
+                }
+            }
+
+            return selection;
+        }
+    }
+
+    // Compiled route; child routes are matched against regions of the
+    // request path without extracting the path components
+    private static class Route {
+        public final String[] names;
+        public final int[] hashCodes;
+        public final Route[] children;
+
+        public final Route wildcard;
+
+        public final HandlerSet[] handlerSets;
+        public final HashMap<String, HandlerSet> extensionHandlerSets;
+
+        public Route(Resource resource, Object servlet) {
+            int n = resource.resources.size();
+
+            names = new String[n];
+            hashCodes = new int[n];
+            children = new Route[n];
+
+            Route wildcard = null;
+
+            int i = 0;
+
+            for (Map.Entry<String, Resource> entry : resource.resources.entrySet()) {
+                String name = entry.getKey();
+                Route child = new Route(entry.getValue(), servlet);
+
+                names[i] = name;
+                hashCodes[i] = name.hashCode();
+                children[i] = child;
+
+                if (name.equals("?")) {
+                    wildcard = child;
+                }
+
+                i++;
+            }
+
+            this.wildcard = wildcard;
+
+            handlerSets = new HandlerSet[VERBS.length];
+            extensionHandlerSets = new HashMap<>();
+
+            for (Map.Entry<String, LinkedList<Method>> entry : resource.handlerMap.entrySet()) {
+                String verb = entry.getKey();
+                HandlerSet handlerSet = new HandlerSet(entry.getValue(), servlet);
+
+                int j = getVerbIndex(verb.toUpperCase());
+
+                if (j != -1) {
+                    handlerSets[j] = handlerSet;
+                } else {
+                    extensionHandlerSets.put(verb, handlerSet);
+                }
+            }
+        }
+
+        public Route getChild(String path, int start, int end) {
+            int hashCode = 0;
+
+            for (int i = start; i < end; i++) {
+                hashCode = 31 * hashCode + path.charAt(i);
+            }
+
+            int length = end - start;
+
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+
+                if (hashCodes[i] == hashCode && name.length() == length && path.regionMatches(start, name, 0, length)) {
+                    return children[i];
+                }
+            }
+
+            return null;
+        }
+
+        public HandlerSet getHandlerSet(String verb) {
+            int i = getVerbIndex(verb);
+
+            if (i == -1) {
+                i = getVerbIndex(verb.toUpperCase());
+            }
+
+            if (i != -1) {
+                return handlerSets[i];
+            } else {
+                return extensionHandlerSets.get(verb.toLowerCase());
+            }
+        }
+
+        public int getDepth() {
+            int depth = 0;
+
+            for (int i = 0; i < children.length; i++) {
+                depth = Math.max(depth, children[i].getDepth() + 1);
+            }
+
+            return depth;
+        }
+    }
+
+    // Asynchronous writer; writes a JSON response in chunks as the output
+    // stream becomes ready, and releases the response's resources when the
+    // request completes, times out, or fails
+    static class AsyncWriter implements WriteListener, AsyncListener {
+        private AsyncContext asyncContext;
+        private JSONEncoder.Generator generator;
+
+        private Object result;
+        private HashMap<String, LinkedList<File>> fileMap;
+
+        private ServletContext servletContext;
+        private String methodName;
+
+        private ServletOutputStream outputStream = null;
+
+        private ByteArrayOutputStream chunk = new ByteArrayOutputStream(ASYNC_CHUNK_SIZE);
+        private EncodingWriter writer;
+
+        private AtomicBoolean complete = new AtomicBoolean(false);
+        private AtomicBoolean released = new AtomicBoolean(false);
+
+        public AsyncWriter(AsyncContext asyncContext, JSONEncoder.Generator generator, Charset charset,
+            Object result, HashMap<String, LinkedList<File>> fileMap, ServletContext servletContext, String methodName) {
+            this.asyncContext = asyncContext;
+            this.generator = generator;
+
+            this.result = result;
+            this.fileMap = fileMap;
+
+            this.servletContext = servletContext;
+            this.methodName = methodName;
+
+            writer = new EncodingWriter(chunk, charset);
+        }
+
+        public void start(ServletOutputStream outputStream) {
+            this.outputStream = outputStream;
+
+            outputStream.setWriteListener(this);
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            try {
+                // Produce and write one chunk each time the stream can accept data
+                while (!complete.get() && outputStream.isReady()) {
+                    boolean hasNext = true;
+
+                    while (hasNext && chunk.size() < ASYNC_CHUNK_SIZE) {
+                        hasNext = generator.next(writer);
+
+                        writer.flush();
+                    }
+
+                    chunk.writeTo(outputStream);
+                    chunk.reset();
+
+                    if (!hasNext) {
+                        finish();
+                    }
+                }
+            } catch (Exception exception) {
+                onError(exception);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            servletContext.log(String.format("Error writing response for method %s().", methodName), throwable);
+
+            finish();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // No-op
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            complete.set(true);
+
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            servletContext.log(String.format("Timed out writing response for method %s().", methodName));
+
+            finish();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onError(event.getThrowable());
+        }
+
+        private void finish() {
+            if (complete.compareAndSet(false, true)) {
+                release();
+
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException exception) {
+                    // The request has already been completed by the container
+                }
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                DispatcherServlet.release(result, fileMap);
+            }
+        }
+    }
+
+    private Route root = null;
+    private int depth = 0;
 
     private ThreadLocal<HttpServletRequest> request = new ThreadLocal<>();
     private ThreadLocal<HttpServletResponse> response = new ThreadLocal<>();
 
     private ThreadLocal<List<String>> keys = new ThreadLocal<>();
 
+    private int flushInterval = 0;
+    private int flushThreshold = 0;
+
+    private boolean compactJSON = false;
+    private boolean asyncJSON = false;
+    private long asyncTimeout = 0;
+
+    private JSONEncoder jsonEncoder = null;
+    private JSONEncoder compactJSONEncoder = null;
+
+    private static ConcurrentHashMap<Class<?>, ParameterConverter<?>> parameterConverters = new ConcurrentHashMap<>();
+
+    private static final HashMap<Class<?>, ParameterConverter<?>> builtInParameterConverters = createBuiltInParameterConverters();
+
+    private static final ParameterConverter<?> unsupportedParameterConverter = new ParameterConverter<Object>() {
+        @Override
+        public Object convert(String value) {
+            throw new UnsupportedOperationException("Invalid parameter type.");
+        }
+    };
+
+    private static final ArgumentConverter unsupportedArgumentConverter = new ArgumentConverter() {
+        @Override
+        public Object getArgument(HashMap<String, LinkedList<String>> parameterMap,
+            HashMap<String, LinkedList<File>> fileMap) {
+            throw new UnsupportedOperationException("Invalid parameter type.");
+        }
+    };
+
     private static final String RESPONSE_MAPPING_PREFIX = "~";
 
+    private static final int MAXIMUM_SELECTION_COUNT = 1024;
+
+    private static final String[] VERBS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS", "TRACE"};
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private static final String FLUSH_INTERVAL_PARAMETER = "flushInterval";
+    private static final String FLUSH_THRESHOLD_PARAMETER = "flushThreshold";
+
+    private static final String COMPACT_JSON_PARAMETER = "compactJSON";
+    private static final String ASYNC_JSON_PARAMETER = "asyncJSON";
+    private static final String ASYNC_TIMEOUT_PARAMETER = "asyncTimeout";
+
+    private static final int ASYNC_CHUNK_SIZE = 8192;
+
     @Override
     public void init() throws ServletException {
+        // Read flush policy
+        String flushInterval = getInitParameter(FLUSH_INTERVAL_PARAMETER);
+
+        if (flushInterval != null) {
+            this.flushInterval = Integer.parseInt(flushInterval);
+        }
+
+        String flushThreshold = getInitParameter(FLUSH_THRESHOLD_PARAMETER);
+
+        if (flushThreshold != null) {
+            this.flushThreshold = Integer.parseInt(flushThreshold);
+        }
+
+        // Read JSON format
+        String compactJSON = getInitParameter(COMPACT_JSON_PARAMETER);
+
+        if (compactJSON != null) {
+            this.compactJSON = Boolean.parseBoolean(compactJSON);
+        }
+
+        String asyncJSON = getInitParameter(ASYNC_JSON_PARAMETER);
+
+        if (asyncJSON != null) {
+            this.asyncJSON = Boolean.parseBoolean(asyncJSON);
+        }
+
+        String asyncTimeout = getInitParameter(ASYNC_TIMEOUT_PARAMETER);
+
+        if (asyncTimeout != null) {
+            this.asyncTimeout = Long.parseLong(asyncTimeout);
+        }
+
+        // Create shared JSON encoders
+        jsonEncoder = new JSONEncoder(false);
+
+        jsonEncoder.setFlushInterval(this.flushInterval);
+        jsonEncoder.setFlushThreshold(this.flushThreshold);
+
+        compactJSONEncoder = new JSONEncoder(true);
+
+        compactJSONEncoder.setFlushInterval(this.flushInterval);
+        compactJSONEncoder.setFlushThreshold(this.flushThreshold);
+
         // Populate resource tree
-        root = new Resource();
+        Resource root = new Resource();
 
         Method[] methods = getClass().getMethods();
 
@@ -121,68 +652,116 @@ public abstract class DispatcherServlet extends HttpServlet {
                 handlerList.add(method);
             }
         }
+
+        // Compile routes
+        this.root = new Route(root, this);
+
+        depth = this.root.getDepth();
     }
 
-    @Override
-    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-        // Look up handler list
-        Resource resource = root;
+    private static int getVerbIndex(String verb) {
+        switch (verb) {
+            case "GET": {
+                return 0;
+            }
 
-        String fileName = request.getServletPath();
+            case "POST": {
+                return 1;
+            }
 
-        if (fileName.isEmpty()) {
-            fileName = request.getContextPath();
+            case "PUT": {
+                return 2;
+            }
 
-            if (fileName.isEmpty()) {
-                fileName = request.getServerName();
+            case "DELETE": {
+                return 3;
             }
-        }
 
-        fileName = fileName.substring(fileName.lastIndexOf('/') + 1);
+            case "PATCH": {
+                return 4;
+            }
 
-        String extension = null;
+            case "HEAD": {
+                return 5;
+            }
+
+            case "OPTIONS": {
+                return 6;
+            }
+
+            case "TRACE": {
+                return 7;
+            }
 
-        LinkedList<String> keys = new LinkedList<>();
+            default: {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        // Look up handler list
+        Route route = root;
 
         String pathInfo = request.getPathInfo();
 
+        int componentStart = -1;
+        int componentEnd = -1;
+
+        String extension = null;
+
+        String[] keys = null;
+        int keyCount = 0;
+
         if (pathInfo != null) {
-            String[] components = pathInfo.split("/");
+            int n = pathInfo.length();
 
-            for (int i = 0; i < components.length; i++) {
-                String component = components[i];
+            int i = 0;
 
-                if (component.length() == 0) {
-                    continue;
-                }
+            while (i < n) {
+                int j = pathInfo.indexOf('/', i);
 
-                if (component.startsWith(RESPONSE_MAPPING_PREFIX)) {
-                    extension = component.substring(RESPONSE_MAPPING_PREFIX.length());
-                    break;
+                if (j == -1) {
+                    j = n;
                 }
 
-                Resource child = resource.resources.get(component);
+                if (j > i) {
+                    if (pathInfo.startsWith(RESPONSE_MAPPING_PREFIX, i)) {
+                        extension = pathInfo.substring(i + RESPONSE_MAPPING_PREFIX.length(), j);
+                        break;
+                    }
 
-                if (child == null) {
-                    child = resource.resources.get("?");
+                    Route child = route.getChild(pathInfo, i, j);
 
                     if (child == null) {
-                        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                        return;
+                        child = route.wildcard;
+
+                        if (child == null) {
+                            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                            return;
+                        }
+
+                        if (keys == null) {
+                            keys = new String[depth];
+                        }
+
+                        keys[keyCount++] = pathInfo.substring(i, j);
                     }
 
-                    keys.add(component);
-                }
+                    route = child;
 
-                resource = child;
+                    componentStart = i;
+                    componentEnd = j;
+                }
 
-                fileName = component;
+                i = j + 1;
             }
         }
 
-        LinkedList<Method> handlerList = resource.handlerMap.get(request.getMethod().toLowerCase());
+        HandlerSet handlerSet = route.getHandlerSet(request.getMethod());
 
-        if (handlerList == null) {
+        if (handlerSet == null) {
             response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
             return;
         }
@@ -196,15 +775,26 @@ public abstract class DispatcherServlet extends HttpServlet {
         HashMap<String, LinkedList<String>> parameterMap = getParameterMap(request);
         HashMap<String, LinkedList<File>> fileMap = getFileMap(request);
 
-        Method method = getMethod(handlerList, parameterMap, fileMap);
+        Handler handler = handlerSet.getHandler(parameterMap.keySet(), fileMap.keySet());
 
-        if (method == null) {
+        if (handler == null) {
             response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
             return;
         }
 
+        Method method = handler.method;
+
         ServletContext servletContext = getServletContext();
 
+        this.request.set(request);
+        this.response.set(response);
+
+        if (keyCount == 0) {
+            this.keys.set(Collections.<String>emptyList());
+        } else {
+            this.keys.set(Collections.unmodifiableList(Arrays.asList(keys).subList(0, keyCount)));
+        }
+
         Encoder encoder = null;
 
         Class<?> returnType = method.getReturnType();
@@ -213,6 +803,23 @@ public abstract class DispatcherServlet extends HttpServlet {
             // Determine encoder type
             if (extension != null) {
                 // Look up response mapping
+                String fileName;
+                if (componentStart != -1) {
+                    fileName = pathInfo.substring(componentStart, componentEnd);
+                } else {
+                    fileName = request.getServletPath();
+
+                    if (fileName.isEmpty()) {
+                        fileName = request.getContextPath();
+
+                        if (fileName.isEmpty()) {
+                            fileName = request.getServerName();
+                        }
+                    }
+
+                    fileName = fileName.substring(fileName.lastIndexOf('/') + 1);
+                }
+
                 fileName += "." + extension;
 
                 String mimeType = servletContext.getMimeType(fileName);
@@ -235,6 +842,9 @@ public abstract class DispatcherServlet extends HttpServlet {
 
                                 templateEncoder.setBaseName(type.getName());
 
+                                templateEncoder.setFlushInterval(flushInterval);
+                                templateEncoder.setFlushThreshold(flushThreshold);
+
                                 templateEncoder.getContext().putAll(mapOf(
                                     entry("scheme", request.getScheme()),
                                     entry("serverName", request.getServerName()),
@@ -262,29 +872,30 @@ public abstract class DispatcherServlet extends HttpServlet {
                 }
             } else {
                 // Use default encoder
-                encoder = new JSONEncoder();
+                encoder = isCompactJSON() ? compactJSONEncoder : jsonEncoder;
             }
         }
 
         // Invoke handler method
-        this.request.set(request);
-        this.response.set(response);
-
-        this.keys.set(Collections.unmodifiableList(new ArrayList<>(keys)));
-
         Object result = null;
 
+        boolean async = false;
+
         try {
+            Object[] arguments;
             try {
-                result = method.invoke(this, getArguments(method, parameterMap, fileMap));
+                arguments = handler.getArguments(parameterMap, fileMap);
             } catch (Exception exception) {
                 response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return;
+            }
 
-                Throwable cause = exception.getCause();
+            try {
+                result = handler.invoke(arguments);
+            } catch (Throwable throwable) {
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 
-                if (cause != null) {
-                    servletContext.log(String.format("Error executing method %s().", method.getName()), cause);
-                }
+                servletContext.log(String.format("Error executing method %s().", method.getName()), throwable);
 
                 return;
             }
@@ -297,27 +908,58 @@ public abstract class DispatcherServlet extends HttpServlet {
             } else {
                 response.setContentType(String.format("%s;charset=%s", encoder.getMimeType(), encoder.getCharset().name()));
 
-                try {
-                    encoder.writeValue(result, response.getOutputStream(), request.getLocale());
-                } catch (IOException exception) {
-                    servletContext.log(String.format("Error writing response for method %s().", method.getName()), exception);
+                if (asyncJSON && encoder instanceof JSONEncoder && request.isAsyncSupported()) {
+                    writeAsync((JSONEncoder)encoder, result, request, response, method, fileMap);
+
+                    async = true;
+                } else {
+                    try {
+                        encoder.writeValue(result, response.getOutputStream(), request.getLocale());
+                    } catch (IOException exception) {
+                        servletContext.log(String.format("Error writing response for method %s().", method.getName()), exception);
+                    }
                 }
             }
         } finally {
-            // Close result
-            if (result instanceof AutoCloseable) {
-                try {
-                    ((AutoCloseable)result).close();
-                } catch (Exception exception) {
-                    // No-op
-                }
+            // Resources are released when an asynchronous response completes
+            if (!async) {
+                release(result, fileMap);
             }
+        }
+    }
 
-            // Delete files
-            for (LinkedList<File> fileList : fileMap.values()) {
-                for (File file : fileList) {
-                    file.delete();
-                }
+    private void writeAsync(JSONEncoder encoder, Object result, HttpServletRequest request, HttpServletResponse response,
+        Method method, HashMap<String, LinkedList<File>> fileMap) {
+        AsyncContext asyncContext = request.startAsync();
+
+        AsyncWriter asyncWriter = new AsyncWriter(asyncContext, encoder.createGenerator(result, request.getLocale()),
+            encoder.getCharset(), result, fileMap, getServletContext(), method.getName());
+
+        // Complete the request if the response can't be started
+        try {
+            asyncContext.setTimeout(asyncTimeout);
+            asyncContext.addListener(asyncWriter);
+
+            asyncWriter.start(response.getOutputStream());
+        } catch (IOException | RuntimeException exception) {
+            asyncWriter.onError(exception);
+        }
+    }
+
+    private static void release(Object result, HashMap<String, LinkedList<File>> fileMap) {
+        // Close result
+        if (result instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)result).close();
+            } catch (Exception exception) {
+                // No-op
+            }
+        }
+
+        // Delete files
+        for (LinkedList<File> fileList : fileMap.values()) {
+            for (File file : fileList) {
+                file.delete();
             }
         }
     }
@@ -375,158 +1017,335 @@ public abstract class DispatcherServlet extends HttpServlet {
         return fileMap;
     }
 
-    private static Method getMethod(LinkedList<Method> handlerList, HashMap<String, LinkedList<String>> parameterMap,
-        HashMap<String, LinkedList<File>> fileMap) {
-        Method method = null;
+    private static ArgumentConverter createArgumentConverter(Parameter parameter) {
+        final String name = parameter.getName();
+        Class<?> type = parameter.getType();
+
+        ArgumentConverter argumentConverter;
+        if (type == List.class) {
+            Type parameterizedType = parameter.getParameterizedType();
 
-        int n = parameterMap.size() + fileMap.size();
+            if (!(parameterizedType instanceof ParameterizedType)) {
+                return unsupportedArgumentConverter;
+            }
 
-        int i = Integer.MAX_VALUE;
+            Type elementType = ((ParameterizedType)parameterizedType).getActualTypeArguments()[0];
 
-        for (Method handler : handlerList) {
-            Parameter[] parameters = handler.getParameters();
+            if (elementType == URL.class) {
+                argumentConverter = new ArgumentConverter() {
+                    @Override
+                    public Object getArgument(HashMap<String, LinkedList<String>> parameterMap,
+                        HashMap<String, LinkedList<File>> fileMap) throws IOException {
+                        LinkedList<File> fileList = fileMap.get(name);
 
-            if (parameters.length >= n) {
-                int j = 0;
+                        List<Object> list;
+                        if (fileList != null) {
+                            list = new ArrayList<>(fileList.size());
 
-                for (int k = 0; k < parameters.length; k++) {
-                    String name = parameters[k].getName();
+                            for (File file : fileList) {
+                                list.add(file.toURI().toURL());
+                            }
+                        } else {
+                            list = Collections.emptyList();
+                        }
 
-                    if (!(parameterMap.containsKey(name) || fileMap.containsKey(name))) {
-                        j++;
+                        return Collections.unmodifiableList(list);
                     }
-                }
+                };
+            } else {
+                final ParameterConverter<?> parameterConverter = getParameterConverter(elementType);
 
-                if (parameters.length - j == n && j < i) {
-                    method = handler;
+                argumentConverter = new ArgumentConverter() {
+                    @Override
+                    public Object getArgument(HashMap<String, LinkedList<String>> parameterMap,
+                        HashMap<String, LinkedList<File>> fileMap) {
+                        LinkedList<String> valueList = parameterMap.get(name);
 
-                    i = j;
-                }
+                        List<Object> list;
+                        if (valueList != null) {
+                            list = new ArrayList<>(valueList.size());
+
+                            for (String value : valueList) {
+                                list.add(parameterConverter.convert(value));
+                            }
+                        } else {
+                            list = Collections.emptyList();
+                        }
+
+                        return Collections.unmodifiableList(list);
+                    }
+                };
             }
-        }
+        } else if (type == URL.class) {
+            argumentConverter = new ArgumentConverter() {
+                @Override
+                public Object getArgument(HashMap<String, LinkedList<String>> parameterMap,
+                    HashMap<String, LinkedList<File>> fileMap) throws IOException {
+                    LinkedList<File> fileList = fileMap.get(name);
 
-        return method;
-    }
+                    return (fileList == null) ? null : fileList.getFirst().toURI().toURL();
+                }
+            };
+        } else {
+            final ParameterConverter<?> parameterConverter = getParameterConverter(type);
 
-    private static Object[] getArguments(Method method, HashMap<String, LinkedList<String>> parameterMap,
-        HashMap<String, LinkedList<File>> fileMap) throws IOException {
-        Parameter[] parameters = method.getParameters();
+            if (parameterConverter == unsupportedParameterConverter) {
+                return unsupportedArgumentConverter;
+            }
+
+            final Object defaultValue = getDefaultValue(type);
 
-        Object[] arguments = new Object[parameters.length];
+            argumentConverter = new ArgumentConverter() {
+                @Override
+                public Object getArgument(HashMap<String, LinkedList<String>> parameterMap,
+                    HashMap<String, LinkedList<File>> fileMap) {
+                    LinkedList<String> valueList = parameterMap.get(name);
 
-        for (int i = 0; i < parameters.length; i++) {
-            Parameter parameter = parameters[i];
+                    return (valueList == null) ? defaultValue : parameterConverter.convert(valueList.getFirst());
+                }
+            };
+        }
 
-            String name = parameter.getName();
-            Class<?> type = parameter.getType();
+        return argumentConverter;
+    }
 
-            Object argument;
-            if (type == List.class) {
-                ParameterizedType parameterizedType = (ParameterizedType)parameter.getParameterizedType();
-                Type elementType = parameterizedType.getActualTypeArguments()[0];
+    private static ParameterConverter<?> getParameterConverter(Type type) {
+        if (!(type instanceof Class<?>)) {
+            return unsupportedParameterConverter;
+        }
 
-                List<Object> list;
-                if (elementType == URL.class) {
-                    LinkedList<File> fileList = fileMap.get(name);
+        Class<?> rawType = (Class<?>)type;
 
-                    if (fileList != null) {
-                        list = new ArrayList<>(fileList.size());
+        // Registered converters take precedence over built-in conversions
+        ParameterConverter<?> parameterConverter = parameterConverters.get(rawType);
 
-                        for (File file : fileList) {
-                            list.add(file.toURI().toURL());
-                        }
-                    } else {
-                        list = Collections.emptyList();
-                    }
-                } else {
-                    LinkedList<String> valueList = parameterMap.get(name);
+        if (parameterConverter == null) {
+            parameterConverter = builtInParameterConverters.get(rawType);
+        }
 
-                    if (valueList != null) {
-                        int n = valueList.size();
+        if (parameterConverter == null) {
+            if (rawType.isEnum()) {
+                parameterConverter = createEnumConverter(rawType);
+            } else {
+                parameterConverter = createFactoryConverter(rawType);
+            }
+        }
 
-                        list = new ArrayList<>(n);
+        return parameterConverter;
+    }
 
-                        for (String value : valueList) {
-                            list.add(getArgument(value, elementType));
-                        }
-                    } else {
-                        list = Collections.emptyList();
-                    }
-                }
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ParameterConverter<?> createEnumConverter(final Class<?> type) {
+        return new ParameterConverter<Object>() {
+            @Override
+            public Object convert(String value) {
+                return Enum.valueOf((Class<? extends Enum>)type, value);
+            }
+        };
+    }
 
-                argument = Collections.unmodifiableList(list);
-            } else if (type == URL.class) {
-                LinkedList<File> fileList = fileMap.get(name);
+    private static ParameterConverter<?> createFactoryConverter(Class<?> type) {
+        // Use a static valueOf(String) method or a constructor that accepts a string
+        MethodHandle factory = null;
 
-                if (fileList != null) {
-                    argument = fileList.getFirst().toURI().toURL();
-                } else {
-                    argument = null;
-                }
-            } else {
-                LinkedList<String> valueList = parameterMap.get(name);
+        try {
+            Method method = type.getMethod("valueOf", String.class);
 
-                String value;
-                if (valueList != null) {
-                    value = valueList.getFirst();
-                } else {
-                    value = null;
-                }
+            if (java.lang.reflect.Modifier.isStatic(method.getModifiers()) && type.isAssignableFrom(method.getReturnType())) {
+                factory = MethodHandles.publicLookup().unreflect(method);
+            }
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            factory = null;
+        }
 
-                argument = getArgument(value, type);
+        if (factory == null && !java.lang.reflect.Modifier.isAbstract(type.getModifiers())) {
+            try {
+                factory = MethodHandles.publicLookup().unreflectConstructor(type.getConstructor(String.class));
+            } catch (NoSuchMethodException | IllegalAccessException exception) {
+                factory = null;
             }
+        }
 
-            arguments[i] = argument;
+        if (factory == null) {
+            return unsupportedParameterConverter;
         }
 
-        return arguments;
+        final MethodHandle handle = factory.asType(MethodType.methodType(Object.class, String.class));
+
+        return new ParameterConverter<Object>() {
+            @Override
+            public Object convert(String value) {
+                try {
+                    return (Object)handle.invokeExact(value);
+                } catch (RuntimeException | Error exception) {
+                    throw exception;
+                } catch (Throwable throwable) {
+                    throw new RuntimeException(throwable);
+                }
+            }
+        };
     }
 
-    private static Object getArgument(String value, Type type) {
-        Object argument;
-        if (type == String.class) {
-            argument = value;
-        } else if (type == Byte.TYPE) {
-            argument = (value == null) ? 0 : Byte.parseByte(value);
-        } else if (type == Byte.class) {
-            argument = (value == null) ? null : Byte.parseByte(value);
+    private static Object getDefaultValue(Class<?> type) {
+        Object defaultValue;
+        if (type == Byte.TYPE) {
+            defaultValue = (byte)0;
         } else if (type == Short.TYPE) {
-            argument = (value == null) ? 0 : Short.parseShort(value);
-        } else if (type == Short.class) {
-            argument = (value == null) ? null : Short.parseShort(value);
+            defaultValue = (short)0;
         } else if (type == Integer.TYPE) {
-            argument = (value == null) ? 0 : Integer.parseInt(value);
-        } else if (type == Integer.class) {
-            argument = (value == null) ? null : Integer.parseInt(value);
+            defaultValue = 0;
         } else if (type == Long.TYPE) {
-            argument = (value == null) ? 0 : Long.parseLong(value);
-        } else if (type == Long.class) {
-            argument = (value == null) ? null : Long.parseLong(value);
+            defaultValue = 0L;
         } else if (type == Float.TYPE) {
-            argument = (value == null) ? 0 : Float.parseFloat(value);
-        } else if (type == Float.class) {
-            argument = (value == null) ? null : Float.parseFloat(value);
+            defaultValue = 0.0f;
         } else if (type == Double.TYPE) {
-            argument = (value == null) ? 0 : Double.parseDouble(value);
-        } else if (type == Double.class) {
-            argument = (value == null) ? null : Double.parseDouble(value);
+            defaultValue = 0.0;
         } else if (type == Boolean.TYPE) {
-            argument = (value == null) ? false : Boolean.parseBoolean(value);
-        } else if (type == Boolean.class) {
-            argument = (value == null) ? null : Boolean.parseBoolean(value);
-        } else if (type == Date.class) {
-            argument = new Date(Long.parseLong(value));
-        } else if (type == LocalDate.class) {
-            argument = LocalDate.parse(value);
-        } else if (type == LocalTime.class) {
-            argument = LocalTime.parse(value);
-        } else if (type == LocalDateTime.class) {
-            argument = LocalDateTime.parse(value);
+            defaultValue = false;
         } else {
-            throw new UnsupportedOperationException("Invalid parameter type.");
+            defaultValue = null;
         }
 
-        return argument;
+        return defaultValue;
+    }
+
+    private static HashMap<Class<?>, ParameterConverter<?>> createBuiltInParameterConverters() {
+        HashMap<Class<?>, ParameterConverter<?>> parameterConverters = new HashMap<>();
+
+        parameterConverters.put(String.class, new ParameterConverter<String>() {
+            @Override
+            public String convert(String value) {
+                return value;
+            }
+        });
+
+        ParameterConverter<Byte> byteConverter = new ParameterConverter<Byte>() {
+            @Override
+            public Byte convert(String value) {
+                return Byte.parseByte(value);
+            }
+        };
+
+        parameterConverters.put(Byte.TYPE, byteConverter);
+        parameterConverters.put(Byte.class, byteConverter);
+
+        ParameterConverter<Short> shortConverter = new ParameterConverter<Short>() {
+            @Override
+            public Short convert(String value) {
+                return Short.parseShort(value);
+            }
+        };
+
+        parameterConverters.put(Short.TYPE, shortConverter);
+        parameterConverters.put(Short.class, shortConverter);
+
+        ParameterConverter<Integer> integerConverter = new ParameterConverter<Integer>() {
+            @Override
+            public Integer convert(String value) {
+                return Integer.parseInt(value);
+            }
+        };
+
+        parameterConverters.put(Integer.TYPE, integerConverter);
+        parameterConverters.put(Integer.class, integerConverter);
+
+        ParameterConverter<Long> longConverter = new ParameterConverter<Long>() {
+            @Override
+            public Long convert(String value) {
+                return Long.parseLong(value);
+            }
+        };
+
+        parameterConverters.put(Long.TYPE, longConverter);
+        parameterConverters.put(Long.class, longConverter);
+
+        ParameterConverter<Float> floatConverter = new ParameterConverter<Float>() {
+            @Override
+            public Float convert(String value) {
+                return Float.parseFloat(value);
+            }
+        };
+
+        parameterConverters.put(Float.TYPE, floatConverter);
+        parameterConverters.put(Float.class, floatConverter);
+
+        ParameterConverter<Double> doubleConverter = new ParameterConverter<Double>() {
+            @Override
+            public Double convert(String value) {
+                return Double.parseDouble(value);
+            }
+        };
+
+        parameterConverters.put(Double.TYPE, doubleConverter);
+        parameterConverters.put(Double.class, doubleConverter);
+
+        ParameterConverter<Boolean> booleanConverter = new ParameterConverter<Boolean>() {
+            @Override
+            public Boolean convert(String value) {
+                return Boolean.parseBoolean(value);
+            }
+        };
+
+        parameterConverters.put(Boolean.TYPE, booleanConverter);
+        parameterConverters.put(Boolean.class, booleanConverter);
+
+        parameterConverters.put(BigInteger.class, new ParameterConverter<BigInteger>() {
+            @Override
+            public BigInteger convert(String value) {
+                return new BigInteger(value);
+            }
+        });
+
+        parameterConverters.put(BigDecimal.class, new ParameterConverter<BigDecimal>() {
+            @Override
+            public BigDecimal convert(String value) {
+                return new BigDecimal(value);
+            }
+        });
+
+        parameterConverters.put(Date.class, new ParameterConverter<Date>() {
+            @Override
+            public Date convert(String value) {
+                return new Date(Long.parseLong(value));
+            }
+        });
+
+        parameterConverters.put(Instant.class, new ParameterConverter<Instant>() {
+            @Override
+            public Instant convert(String value) {
+                return Instant.parse(value);
+            }
+        });
+
+        parameterConverters.put(LocalDate.class, new ParameterConverter<LocalDate>() {
+            @Override
+            public LocalDate convert(String value) {
+                return LocalDate.parse(value);
+            }
+        });
+
+        parameterConverters.put(LocalTime.class, new ParameterConverter<LocalTime>() {
+            @Override
+            public LocalTime convert(String value) {
+                return LocalTime.parse(value);
+            }
+        });
+
+        parameterConverters.put(LocalDateTime.class, new ParameterConverter<LocalDateTime>() {
+            @Override
+            public LocalDateTime convert(String value) {
+                return LocalDateTime.parse(value);
+            }
+        });
+
+        parameterConverters.put(UUID.class, new ParameterConverter<UUID>() {
+            @Override
+            public UUID convert(String value) {
+                return UUID.fromString(value);
+            }
+        });
+
+        return parameterConverters;
     }
 
     /**
@@ -549,6 +1368,45 @@ public abstract class DispatcherServlet extends HttpServlet {
         return response.get();
     }
 
+    /**
+     * Returns the decoded body of the current request. The body is decoded
+     * only if the request's content type is "application/json". Since the
+     * body is read from the request's input stream, this method may only be
+     * called once per request.
+     *
+     * @return
+     * The decoded request body, or <tt>null</tt> if the request does not
+     * contain a JSON body.
+     *
+     * @throws IOException
+     * If an exception occurs, or if the body does not contain valid JSON.
+     */
+    protected Object getBody() throws IOException {
+        HttpServletRequest request = getRequest();
+
+        String contentType = request.getContentType();
+
+        if (contentType == null || !contentType.startsWith(JSON_CONTENT_TYPE)) {
+            return null;
+        }
+
+        return new JSONDecoder().readValue(request.getReader());
+    }
+
+    /**
+     * Indicates that JSON responses are written without line breaks or
+     * indentation. By default, this value is specified by the "compactJSON"
+     * initialization parameter. Subclasses may override this method to select
+     * the format for the current request.
+     *
+     * @return
+     * <tt>true</tt> if the JSON response should be compact; <tt>false</tt>,
+     * otherwise.
+     */
+    protected boolean isCompactJSON() {
+        return compactJSON;
+    }
+
     /**
      * Returns the list of keys parsed from the request path.
      *
@@ -559,6 +1417,47 @@ public abstract class DispatcherServlet extends HttpServlet {
         return keys.get();
     }
 
+    /**
+     * Registers a parameter converter for a type. The converter is used for
+     * method arguments and list elements of exactly the given type, and takes
+     * precedence over the servlet's built-in conversions. Converters are
+     * resolved when a servlet is initialized, so they must be registered
+     * before the servlets that use them are loaded.
+     *
+     * @param <T> The type of argument the converter produces.
+     *
+     * @param type
+     * The type to which the converter applies.
+     *
+     * @param parameterConverter
+     * The parameter converter.
+     */
+    public static <T> void registerParameterConverter(Class<T> type, ParameterConverter<? extends T> parameterConverter) {
+        if (type == null) {
+            throw new IllegalArgumentException();
+        }
+
+        if (parameterConverter == null) {
+            throw new IllegalArgumentException();
+        }
+
+        parameterConverters.put(type, parameterConverter);
+    }
+
+    /**
+     * Removes the parameter converter registered for a type.
+     *
+     * @param type
+     * The type whose converter will be removed.
+     */
+    public static void unregisterParameterConverter(Class<?> type) {
+        if (type == null) {
+            throw new IllegalArgumentException();
+        }
+
+        parameterConverters.remove(type);
+    }
+
     /**
      * Creates a list from a variable length array of elements.
      *
@@ -16,7 +16,6 @@ package org.jtemplate;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.Locale;
@@ -25,6 +24,9 @@ import java.util.Locale;
  * Abstract base class for encoders.
  */
 public abstract class Encoder {
+    private int flushInterval = 0;
+    private int flushThreshold = 0;
+
     /**
      * Returns the MIME type of the content produced by the encoder.
      *
@@ -41,6 +43,58 @@ public abstract class Encoder {
      */
     public abstract Charset getCharset();
 
+    /**
+     * Returns the number of repeated elements (such as section iterations or
+     * array elements) after which the output is flushed.
+     *
+     * @return
+     * The flush interval, or 0 if output is not flushed by element count.
+     */
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the number of repeated elements after which the output is flushed.
+     * Flushing allows a client to begin receiving a large response before
+     * all of its content has been produced.
+     *
+     * @param flushInterval
+     * The flush interval, or 0 to disable flushing by element count.
+     */
+    public void setFlushInterval(int flushInterval) {
+        if (flushInterval < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Returns the number of bytes after which an output stream is flushed.
+     *
+     * @return
+     * The flush threshold, or 0 if output is not flushed by byte count.
+     */
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * Sets the number of bytes after which an output stream is flushed. The
+     * threshold applies only when writing to an output stream.
+     *
+     * @param flushThreshold
+     * The flush threshold, or 0 to disable flushing by byte count.
+     */
+    public void setFlushThreshold(int flushThreshold) {
+        if (flushThreshold < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.flushThreshold = flushThreshold;
+    }
+
     /**
      * Writes a value to an output stream.
      *
@@ -73,7 +127,7 @@ public abstract class Encoder {
      * If an exception occurs.
      */
     public void writeValue(Object value, OutputStream outputStream, Locale locale) throws IOException {
-        Writer writer = new OutputStreamWriter(outputStream, getCharset());
+        Writer writer = new EncodingWriter(outputStream, getCharset(), flushThreshold);
         writeValue(value, writer, locale);
 
         writer.flush();
@@ -111,4 +165,22 @@ public abstract class Encoder {
      * If an exception occurs.
      */
     public abstract void writeValue(Object value, Writer writer, Locale locale) throws IOException;
+
+    /**
+     * Flushes the output if the flush interval has been reached.
+     *
+     * @param count
+     * The number of repeated elements written so far.
+     *
+     * @param writer
+     * The character stream to flush.
+     *
+     * @throws IOException
+     * If an exception occurs.
+     */
+    protected void flush(int count, Writer writer) throws IOException {
+        if (flushInterval > 0 && count % flushInterval == 0) {
+            writer.flush();
+        }
+    }
 }
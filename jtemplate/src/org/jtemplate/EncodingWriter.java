@@ -0,0 +1,312 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer that encodes characters into a byte buffer and writes the buffer to
+ * an output stream. Pre-encoded bytes may be written directly.
+ */
+class EncodingWriter extends Writer {
+    private OutputStream outputStream;
+    private CharsetEncoder encoder;
+
+    private int flushThreshold;
+
+    private boolean utf8;
+    private char highSurrogate = 0;
+
+    private CharBuffer charBuffer;
+    private ByteBuffer byteBuffer;
+
+    private int count = 0;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int MAXIMUM_UTF_8_LENGTH = 4;
+
+    public EncodingWriter(OutputStream outputStream, Charset charset) {
+        this(outputStream, charset, 0);
+    }
+
+    public EncodingWriter(OutputStream outputStream, Charset charset, int flushThreshold) {
+        this.outputStream = outputStream;
+        this.flushThreshold = flushThreshold;
+
+        // Keep the buffers small enough that the threshold can be honored
+        int bufferSize = (flushThreshold > 0) ? Math.min(Math.max(flushThreshold, 16), BUFFER_SIZE) : BUFFER_SIZE;
+
+        charBuffer = CharBuffer.allocate(bufferSize);
+        byteBuffer = ByteBuffer.allocate(bufferSize);
+
+        encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        // UTF-8 is encoded directly into the byte buffer
+        utf8 = charset.equals(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (utf8) {
+            int position = reserve(byteBuffer.position(), MAXIMUM_UTF_8_LENGTH);
+
+            byteBuffer.position(encodeUTF8((char)c, byteBuffer.array(), position));
+
+            return;
+        }
+
+        if (!charBuffer.hasRemaining()) {
+            encodeChars();
+        }
+
+        charBuffer.put((char)c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (utf8) {
+            byte[] bytes = byteBuffer.array();
+
+            int position = byteBuffer.position();
+
+            for (int i = off, end = off + len; i < end; i++) {
+                char c = cbuf[i];
+
+                if (c < 0x80 && highSurrogate == 0) {
+                    position = reserve(position, 1);
+
+                    bytes[position++] = (byte)c;
+                } else {
+                    position = reserve(position, MAXIMUM_UTF_8_LENGTH);
+
+                    position = encodeUTF8(c, bytes, position);
+                }
+            }
+
+            byteBuffer.position(position);
+
+            return;
+        }
+
+        while (len > 0) {
+            if (!charBuffer.hasRemaining()) {
+                encodeChars();
+            }
+
+            int n = Math.min(len, charBuffer.remaining());
+
+            charBuffer.put(cbuf, off, n);
+
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (utf8) {
+            byte[] bytes = byteBuffer.array();
+
+            int position = byteBuffer.position();
+
+            for (int i = off, end = off + len; i < end; i++) {
+                char c = str.charAt(i);
+
+                if (c < 0x80 && highSurrogate == 0) {
+                    position = reserve(position, 1);
+
+                    bytes[position++] = (byte)c;
+                } else {
+                    position = reserve(position, MAXIMUM_UTF_8_LENGTH);
+
+                    position = encodeUTF8(c, bytes, position);
+                }
+            }
+
+            byteBuffer.position(position);
+
+            return;
+        }
+
+        while (len > 0) {
+            if (!charBuffer.hasRemaining()) {
+                encodeChars();
+            }
+
+            int n = Math.min(len, charBuffer.remaining());
+
+            charBuffer.put(str, off, off + n);
+
+            off += n;
+            len -= n;
+        }
+    }
+
+    public void writeBytes(byte[] bytes, int off, int len) throws IOException {
+        // A pending high surrogate can't be paired across raw bytes
+        encodePendingChars();
+
+        if (len > byteBuffer.remaining()) {
+            writeBuffer();
+        }
+
+        if (len > byteBuffer.capacity()) {
+            outputStream.write(bytes, off, len);
+
+            count += len;
+        } else {
+            byteBuffer.put(bytes, off, len);
+        }
+    }
+
+    private int reserve(int position, int n) throws IOException {
+        if (byteBuffer.capacity() - position < n) {
+            byteBuffer.position(position);
+
+            writeBuffer();
+
+            position = 0;
+        }
+
+        return position;
+    }
+
+    private int encodeUTF8(char c, byte[] bytes, int position) {
+        // An unpaired surrogate is replaced with a question mark, as it is
+        // by the charset encoder
+        if (highSurrogate != 0) {
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(highSurrogate, c);
+
+                highSurrogate = 0;
+
+                bytes[position++] = (byte)(0xf0 | (codePoint >> 18));
+                bytes[position++] = (byte)(0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[position++] = (byte)(0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[position++] = (byte)(0x80 | (codePoint & 0x3f));
+
+                return position;
+            }
+
+            highSurrogate = 0;
+
+            bytes[position++] = '?';
+        }
+
+        if (c < 0x80) {
+            bytes[position++] = (byte)c;
+        } else if (c < 0x800) {
+            bytes[position++] = (byte)(0xc0 | (c >> 6));
+            bytes[position++] = (byte)(0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            // The surrogate remains pending until more input arrives
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            bytes[position++] = '?';
+        } else {
+            bytes[position++] = (byte)(0xe0 | (c >> 12));
+            bytes[position++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+            bytes[position++] = (byte)(0x80 | (c & 0x3f));
+        }
+
+        return position;
+    }
+
+    private void encodePendingChars() throws IOException {
+        if (utf8) {
+            if (highSurrogate != 0) {
+                int position = reserve(byteBuffer.position(), 1);
+
+                byteBuffer.array()[position++] = '?';
+                byteBuffer.position(position);
+
+                highSurrogate = 0;
+            }
+
+            return;
+        }
+
+        charBuffer.flip();
+
+        // Any unpaired high surrogate is replaced
+        while (encoder.encode(charBuffer, byteBuffer, true) == CoderResult.OVERFLOW) {
+            writeBuffer();
+        }
+
+        while (encoder.flush(byteBuffer) == CoderResult.OVERFLOW) {
+            writeBuffer();
+        }
+
+        encoder.reset();
+
+        charBuffer.clear();
+    }
+
+    private void encodeChars() throws IOException {
+        charBuffer.flip();
+
+        // Any unpaired high surrogate remains in the buffer until more input arrives
+        while (encoder.encode(charBuffer, byteBuffer, false) == CoderResult.OVERFLOW) {
+            writeBuffer();
+        }
+
+        charBuffer.compact();
+    }
+
+    private void writeBuffer() throws IOException {
+        int n = byteBuffer.position();
+
+        outputStream.write(byteBuffer.array(), 0, n);
+
+        byteBuffer.clear();
+
+        count += n;
+
+        if (flushThreshold > 0 && count >= flushThreshold) {
+            outputStream.flush();
+
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encodeChars();
+        writeBuffer();
+
+        outputStream.flush();
+
+        count = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+
+        outputStream.close();
+    }
+}
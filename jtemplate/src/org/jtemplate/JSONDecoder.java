@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON decoder. Objects are decoded as {@link Map} instances, arrays as
+ * {@link List} instances, and numbers as described by
+ * {@link JSONReader#getNumber()}. Documents are parsed incrementally and
+ * without recursion, so the nesting depth of a document is not limited by the
+ * size of the call stack.
+ */
+public class JSONDecoder {
+    /**
+     * Reads a value from an input stream. The stream is assumed to contain
+     * UTF-8 encoded text.
+     *
+     * @param inputStream
+     * The input stream to read from.
+     *
+     * @return
+     * The decoded value.
+     *
+     * @throws IOException
+     * If an exception occurs, or if the stream does not contain valid JSON.
+     */
+    public Object readValue(InputStream inputStream) throws IOException {
+        return readValue(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a value from a character stream.
+     *
+     * @param reader
+     * The character stream to read from.
+     *
+     * @return
+     * The decoded value.
+     *
+     * @throws IOException
+     * If an exception occurs, or if the stream does not contain valid JSON.
+     */
+    public Object readValue(Reader reader) throws IOException {
+        JSONReader jsonReader = new JSONReader(reader);
+
+        ArrayList<Object> containers = new ArrayList<>();
+        ArrayList<String> keys = new ArrayList<>();
+
+        Object result = null;
+
+        JSONReader.Event event;
+        while ((event = jsonReader.next()) != null) {
+            Object value;
+            switch (event) {
+                case START_OBJECT: {
+                    containers.add(new LinkedHashMap<String, Object>());
+                    continue;
+                }
+
+                case START_ARRAY: {
+                    containers.add(new ArrayList<Object>());
+                    continue;
+                }
+
+                case KEY: {
+                    keys.add(jsonReader.getString());
+                    continue;
+                }
+
+                case END_OBJECT:
+                case END_ARRAY: {
+                    value = containers.remove(containers.size() - 1);
+                    break;
+                }
+
+                case STRING: {
+                    value = jsonReader.getString();
+                    break;
+                }
+
+                case NUMBER: {
+                    value = jsonReader.getNumber();
+                    break;
+                }
+
+                case BOOLEAN: {
+                    value = jsonReader.getBoolean();
+                    break;
+                }
+
+                case NULL: {
+                    value = null;
+                    break;
+                }
+
+                default: {
+                    throw new IllegalStateException();
+                }
+            }
+
+            // Add the value to the enclosing container
+            if (containers.isEmpty()) {
+                result = value;
+            } else {
+                addValue(containers.get(containers.size() - 1), keys, value);
+            }
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addValue(Object container, ArrayList<String> keys, Object value) {
+        if (container instanceof Map<?, ?>) {
+            ((Map<String, Object>)container).put(keys.remove(keys.size() - 1), value);
+        } else {
+            ((List<Object>)container).add(value);
+        }
+    }
+}
@@ -15,21 +15,443 @@
 package org.jtemplate;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.jtemplate.beans.BeanAdapter;
 
 /**
- * JSON encoder.
+ * JSON encoder. JSON encoders do not maintain any state while writing a
+ * value, so a single instance may be shared by multiple threads once it has
+ * been configured.
  */
 public class JSONEncoder extends Encoder {
-    private int depth = 0;
+    // Value writer
+    private static abstract class ValueWriter {
+        public abstract void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException;
+    }
+
+    // Serializer value writer
+    private static class SerializerValueWriter extends ValueWriter {
+        private JSONSerializer<Object> serializer;
+
+        @SuppressWarnings("unchecked")
+        public SerializerValueWriter(JSONSerializer<?> serializer) {
+            this.serializer = (JSONSerializer<Object>)serializer;
+        }
+
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            serializer.writeValue(value, writer, locale);
+        }
+    }
+
+    // Property key table; contains the pre-encoded JSON keys for a list of
+    // Bean property names
+    private static class PropertyKeyTable {
+        public final List<String> names;
+        public final String[] keys;
+
+        public PropertyKeyTable(List<String> names) {
+            this.names = names;
+
+            keys = new String[names.size()];
+
+            for (int i = 0; i < keys.length; i++) {
+                StringWriter writer = new StringWriter();
+
+                try {
+                    writeString(names.get(i), writer);
+                } catch (IOException exception) {
+                    throw new RuntimeException(exception);
+                }
+
+                writer.append(":");
+
+                keys[i] = writer.toString();
+            }
+        }
+    }
+
+    // Property keys; caches the key table for a Bean type, which is rebuilt
+    // if the type's property names are recomputed
+    private static class PropertyKeys {
+        private volatile PropertyKeyTable keyTable = null;
+
+        public String[] getKeys(List<String> names) {
+            PropertyKeyTable keyTable = this.keyTable;
+
+            if (keyTable == null || keyTable.names != names) {
+                keyTable = new PropertyKeyTable(names);
+
+                this.keyTable = keyTable;
+            }
+
+            return keyTable.keys;
+        }
+    }
+
+    // Generator frame type enumeration
+    private enum FrameType {
+        ARRAY,
+        OBJECT,
+        INT_ARRAY,
+        LONG_ARRAY,
+        DOUBLE_ARRAY
+    }
+
+    // Generator frame
+    private static class Frame {
+        public final FrameType type;
+        public final Iterator<?> iterator;
+        public final int depth;
+
+        public int count = 0;
+
+        public Frame(FrameType type, Iterator<?> iterator, int depth) {
+            this.type = type;
+            this.iterator = iterator;
+            this.depth = depth;
+        }
+    }
+
+    // Pull-based generator; produces the same output as writeValue(), one
+    // element at a time
+    class Generator {
+        private Object value;
+        private Locale locale;
+
+        private ArrayList<Frame> frames = new ArrayList<>();
+
+        private boolean started = false;
+
+        Generator(Object value, Locale locale) {
+            this.value = value;
+            this.locale = locale;
+        }
+
+        public boolean next(Writer writer) throws IOException {
+            if (!started) {
+                started = true;
+
+                start(value, writer, 0);
+
+                value = null;
+            } else {
+                Frame frame = frames.get(frames.size() - 1);
+
+                if (frame.iterator.hasNext()) {
+                    if (frame.type == FrameType.OBJECT) {
+                        Map.Entry<?, ?> entry = (Map.Entry<?, ?>)frame.iterator.next();
+
+                        if (frame.count > 0) {
+                            writer.append(",");
+                        }
+
+                        if (!compact) {
+                            writer.append("\n");
+                        }
+
+                        Object key = entry.getKey();
+
+                        if (key != null) {
+                            if (!compact) {
+                                indent(writer, frame.depth + 1);
+                            }
+
+                            writeString(key.toString(), writer);
+
+                            writer.append(compact ? ":" : ": ");
+
+                            frame.count++;
+
+                            start(entry.getValue(), writer, frame.depth + 1);
+                        }
+                    } else {
+                        startElement(frame.count++, writer, frame.depth);
+
+                        switch (frame.type) {
+                            case ARRAY: {
+                                start(frame.iterator.next(), writer, frame.depth + 1);
+                                break;
+                            }
+
+                            case INT_ARRAY: {
+                                writeLong(((PrimitiveIterator.OfInt)frame.iterator).nextInt(), writer);
+                                break;
+                            }
+
+                            case LONG_ARRAY: {
+                                writeLong(((PrimitiveIterator.OfLong)frame.iterator).nextLong(), writer);
+                                break;
+                            }
+
+                            case DOUBLE_ARRAY: {
+                                writeDouble(((PrimitiveIterator.OfDouble)frame.iterator).nextDouble(), writer);
+                                break;
+                            }
+
+                            default: {
+                                throw new UnsupportedOperationException();
+                            }
+                        }
+                    }
+                } else {
+                    frames.remove(frames.size() - 1);
+
+                    endElements(writer, frame.depth);
+
+                    writer.append((frame.type == FrameType.OBJECT) ? "}" : "]");
+                }
+            }
+
+            return !frames.isEmpty();
+        }
+
+        private void start(Object value, Writer writer, int depth) throws IOException {
+            ValueWriter valueWriter = (value == null) ? null : valueWriters.get(value.getClass());
+
+            FrameType type;
+            Iterator<?> iterator;
+            if (valueWriter == iterableWriter) {
+                type = FrameType.ARRAY;
+                iterator = ((Iterable<?>)value).iterator();
+            } else if (valueWriter == mapWriter || valueWriter == beanWriter) {
+                type = FrameType.OBJECT;
+                iterator = ((Map<?, ?>)value).entrySet().iterator();
+            } else if (valueWriter == intArrayWriter) {
+                type = FrameType.INT_ARRAY;
+                iterator = Arrays.stream((int[])value).iterator();
+            } else if (valueWriter == longArrayWriter) {
+                type = FrameType.LONG_ARRAY;
+                iterator = Arrays.stream((long[])value).iterator();
+            } else if (valueWriter == doubleArrayWriter) {
+                type = FrameType.DOUBLE_ARRAY;
+                iterator = Arrays.stream((double[])value).iterator();
+            } else if (valueWriter == intStreamWriter) {
+                type = FrameType.INT_ARRAY;
+                iterator = ((IntStream)value).iterator();
+            } else if (valueWriter == longStreamWriter) {
+                type = FrameType.LONG_ARRAY;
+                iterator = ((LongStream)value).iterator();
+            } else if (valueWriter == doubleStreamWriter) {
+                type = FrameType.DOUBLE_ARRAY;
+                iterator = ((DoubleStream)value).iterator();
+            } else {
+                writeValue(value, writer, locale, depth);
+
+                return;
+            }
+
+            writer.append((type == FrameType.OBJECT) ? "{" : "[");
+
+            frames.add(new Frame(type, iterator, depth));
+        }
+    }
+
+    private final boolean compact;
+
+    private static ConcurrentHashMap<Class<?>, JSONSerializer<?>> serializers = new ConcurrentHashMap<>();
+
+    private static volatile ClassValue<ValueWriter> valueWriters = createValueWriters();
+
+    private static final ClassValue<PropertyKeys> propertyKeys = new ClassValue<PropertyKeys>() {
+        @Override
+        protected PropertyKeys computeValue(Class<?> type) {
+            return new PropertyKeys();
+        }
+    };
+
+    private static final double DECIMAL_EXPONENT_THRESHOLD = 1e7;
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
+
+    // Digit buffers are cached per thread, since encoders may be shared
+    private static final ThreadLocal<char[]> digits = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[20];
+        }
+    };
+
+    private static final ValueWriter stringWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeString((CharSequence)value, writer);
+        }
+    };
+
+    private static final ValueWriter literalWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writer.append(String.valueOf(value));
+        }
+    };
+
+    private static final ValueWriter longWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeLong(((Number)value).longValue(), writer);
+        }
+    };
+
+    private static final ValueWriter doubleWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeDouble((Double)value, writer);
+        }
+    };
+
+    private static final ValueWriter floatWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeFloat((Float)value, writer);
+        }
+    };
+
+    private static final ValueWriter dateWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeLong(((Date)value).getTime(), writer);
+        }
+    };
+
+    private static final ValueWriter localDateWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeString(((LocalDate)value).format(DateTimeFormatter.ISO_LOCAL_DATE), writer);
+        }
+    };
+
+    private static final ValueWriter localTimeWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeString(((LocalTime)value).format(DateTimeFormatter.ISO_LOCAL_TIME), writer);
+        }
+    };
+
+    private static final ValueWriter localDateTimeWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeString(((LocalDateTime)value).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), writer);
+        }
+    };
+
+    private static final ValueWriter iterableWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeIterable((Iterable<?>)value, writer, locale, depth);
+        }
+    };
+
+    private static final ValueWriter mapWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeMap((Map<?, ?>)value, writer, locale, depth);
+        }
+    };
+
+    private static final ValueWriter beanWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeBean((BeanAdapter)value, writer, locale, depth);
+        }
+    };
+
+    private static final ValueWriter intArrayWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeInts(Arrays.stream((int[])value).iterator(), writer, depth);
+        }
+    };
+
+    private static final ValueWriter longArrayWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeLongs(Arrays.stream((long[])value).iterator(), writer, depth);
+        }
+    };
+
+    private static final ValueWriter doubleArrayWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeDoubles(Arrays.stream((double[])value).iterator(), writer, depth);
+        }
+    };
+
+    private static final ValueWriter intStreamWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeInts(((IntStream)value).iterator(), writer, depth);
+        }
+    };
+
+    private static final ValueWriter longStreamWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeLongs(((LongStream)value).iterator(), writer, depth);
+        }
+    };
+
+    private static final ValueWriter doubleStreamWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            encoder.writeDoubles(((DoubleStream)value).iterator(), writer, depth);
+        }
+    };
+
+    private static final ValueWriter defaultWriter = new ValueWriter() {
+        @Override
+        public void write(JSONEncoder encoder, Object value, Writer writer, Locale locale, int depth) throws IOException {
+            writeString(value.toString(), writer);
+        }
+    };
+
+    /**
+     * Constructs a new JSON encoder.
+     */
+    public JSONEncoder() {
+        this(false);
+    }
+
+    /**
+     * Constructs a new JSON encoder.
+     *
+     * @param compact
+     * <tt>true</tt> if the output should be written without line breaks or
+     * indentation; <tt>false</tt>, otherwise.
+     */
+    public JSONEncoder(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Indicates that the output is written without line breaks or indentation.
+     *
+     * @return
+     * <tt>true</tt> if the encoder produces compact output; <tt>false</tt>,
+     * otherwise.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
 
     @Override
     public String getMimeType() {
@@ -38,127 +460,401 @@ public class JSONEncoder extends Encoder {
 
     @Override
     public Charset getCharset() {
-        return Charset.forName("UTF-8");
+        return StandardCharsets.UTF_8;
     }
 
     @Override
     public void writeValue(Object value, Writer writer, Locale locale) throws IOException {
+        writeValue(value, writer, locale, 0);
+    }
+
+    Generator createGenerator(Object value, Locale locale) {
+        return new Generator(value, locale);
+    }
+
+    private void writeValue(Object value, Writer writer, Locale locale, int depth) throws IOException {
         if (value == null) {
             writer.append(null);
-        } else if (value instanceof CharSequence) {
-            CharSequence string = (CharSequence)value;
-
-            writer.append("\"");
-
-            for (int i = 0, n = string.length(); i < n; i++) {
-                char c = string.charAt(i);
-
-                if (c == '"' || c == '\\') {
-                    writer.append("\\" + c);
-                } else if (c == '\b') {
-                    writer.append("\\b");
-                } else if (c == '\f') {
-                    writer.append("\\f");
-                } else if (c == '\n') {
-                    writer.append("\\n");
-                } else if (c == '\r') {
-                    writer.append("\\r");
-                } else if (c == '\t') {
-                    writer.append("\\t");
-                } else {
-                    writer.append(c);
-                }
+        } else {
+            valueWriters.get(value.getClass()).write(this, value, writer, locale, depth);
+        }
+    }
+
+    private static void writeString(CharSequence string, Writer writer) throws IOException {
+        writer.append("\"");
+
+        for (int i = 0, n = string.length(); i < n; i++) {
+            char c = string.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                writer.append("\\" + c);
+            } else if (c == '\b') {
+                writer.append("\\b");
+            } else if (c == '\f') {
+                writer.append("\\f");
+            } else if (c == '\n') {
+                writer.append("\\n");
+            } else if (c == '\r') {
+                writer.append("\\r");
+            } else if (c == '\t') {
+                writer.append("\\t");
+            } else {
+                writer.append(c);
             }
+        }
 
-            writer.append("\"");
-        } else if (value instanceof Number || value instanceof Boolean) {
-            writer.append(String.valueOf(value));
-        } else if (value instanceof Date) {
-            writeValue(((Date)value).getTime(), writer);
-        } else if (value instanceof LocalDate) {
-            writeValue(((LocalDate)value).format(DateTimeFormatter.ISO_LOCAL_DATE), writer);
-        } else if (value instanceof LocalTime) {
-            writeValue(((LocalTime)value).format(DateTimeFormatter.ISO_LOCAL_TIME), writer);
-        } else if (value instanceof LocalDateTime) {
-            writeValue(((LocalDateTime)value).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), writer);
-        } else if (value instanceof Iterable<?>) {
-            Iterable<?> iterable = (Iterable<?>)value;
-
-            writer.append("[");
-
-            depth++;
-
-            int i = 0;
-
-            for (Object element : iterable) {
-                if (i > 0) {
-                    writer.append(",");
-                }
+        writer.append("\"");
+    }
 
-                writer.append("\n");
+    private static void writeLong(long value, Writer writer) throws IOException {
+        char[] buffer = digits.get();
 
-                indent(writer);
+        // Digits are produced from the end of the buffer; working with a
+        // non-positive value allows Long.MIN_VALUE to be handled directly
+        int i = buffer.length;
 
-                writeValue(element, writer);
+        long q = (value < 0) ? value : -value;
 
-                i++;
-            }
+        do {
+            long r = q / 10;
+
+            buffer[--i] = (char)('0' + (r * 10 - q));
+
+            q = r;
+        } while (q < 0);
+
+        if (value < 0) {
+            buffer[--i] = '-';
+        }
+
+        writer.write(buffer, i, buffer.length - i);
+    }
+
+    private static void writeDouble(double value, Writer writer) throws IOException {
+        // Integral values below the exponent threshold are formatted as they
+        // are by Double#toString()
+        if (isIntegral(value)) {
+            writeLong((long)value, writer);
+
+            writer.write(".0");
+        } else {
+            writer.write(Double.toString(value));
+        }
+    }
+
+    private static void writeFloat(float value, Writer writer) throws IOException {
+        if (isIntegral(value)) {
+            writeLong((long)value, writer);
+
+            writer.write(".0");
+        } else {
+            writer.write(Float.toString(value));
+        }
+    }
+
+    private static boolean isIntegral(double value) {
+        return value > -DECIMAL_EXPONENT_THRESHOLD && value < DECIMAL_EXPONENT_THRESHOLD
+            && value == (long)value
+            && Double.doubleToRawLongBits(value) != NEGATIVE_ZERO_BITS;
+    }
+
+    private void writeInts(PrimitiveIterator.OfInt iterator, Writer writer, int depth) throws IOException {
+        writer.append("[");
+
+        int i = 0;
+
+        while (iterator.hasNext()) {
+            startElement(i, writer, depth);
+
+            writeLong(iterator.nextInt(), writer);
 
-            depth--;
+            flush(++i, writer);
+        }
+
+        endElements(writer, depth);
+
+        writer.append("]");
+    }
+
+    private void writeLongs(PrimitiveIterator.OfLong iterator, Writer writer, int depth) throws IOException {
+        writer.append("[");
+
+        int i = 0;
+
+        while (iterator.hasNext()) {
+            startElement(i, writer, depth);
+
+            writeLong(iterator.nextLong(), writer);
+
+            flush(++i, writer);
+        }
+
+        endElements(writer, depth);
+
+        writer.append("]");
+    }
+
+    private void writeDoubles(PrimitiveIterator.OfDouble iterator, Writer writer, int depth) throws IOException {
+        writer.append("[");
+
+        int i = 0;
+
+        while (iterator.hasNext()) {
+            startElement(i, writer, depth);
 
+            writeDouble(iterator.nextDouble(), writer);
+
+            flush(++i, writer);
+        }
+
+        endElements(writer, depth);
+
+        writer.append("]");
+    }
+
+    private void startElement(int i, Writer writer, int depth) throws IOException {
+        if (i > 0) {
+            writer.append(",");
+        }
+
+        if (!compact) {
             writer.append("\n");
 
-            indent(writer);
+            indent(writer, depth + 1);
+        }
+    }
+
+    private void endElements(Writer writer, int depth) throws IOException {
+        if (!compact) {
+            writer.append("\n");
 
-            writer.append("]");
-        } else if (value instanceof Map<?, ?>) {
-            Map<?, ?> map = (Map<?, ?>)value;
+            indent(writer, depth);
+        }
+    }
 
-            writer.append("{");
+    private void writeIterable(Iterable<?> iterable, Writer writer, Locale locale, int depth) throws IOException {
+        writer.append("[");
 
-            depth++;
+        int i = 0;
 
-            int i = 0;
+        for (Object element : iterable) {
+            startElement(i, writer, depth);
 
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-                if (i > 0) {
-                    writer.append(",");
-                }
+            writeValue(element, writer, locale, depth + 1);
 
-                writer.append("\n");
+            flush(++i, writer);
+        }
 
-                Object key = entry.getKey();
+        endElements(writer, depth);
 
-                if (key == null) {
-                    continue;
-                }
+        writer.append("]");
+    }
+
+    private void writeMap(Map<?, ?> map, Writer writer, Locale locale, int depth) throws IOException {
+        writer.append("{");
 
-                indent(writer);
+        int i = 0;
 
-                writeValue(key.toString(), writer);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (i > 0) {
+                writer.append(",");
+            }
+
+            if (!compact) {
+                writer.append("\n");
+            }
 
-                writer.append(": ");
+            Object key = entry.getKey();
 
-                writeValue(entry.getValue(), writer);
+            if (key == null) {
+                continue;
+            }
 
-                i++;
+            if (!compact) {
+                indent(writer, depth + 1);
             }
 
-            depth--;
+            writeString(key.toString(), writer);
 
-            writer.append("\n");
+            writer.append(compact ? ":" : ": ");
 
-            indent(writer);
+            writeValue(entry.getValue(), writer, locale, depth + 1);
 
-            writer.append("}");
-        } else {
-            writeValue(value.toString(), writer);
+            i++;
+        }
+
+        endElements(writer, depth);
+
+        writer.append("}");
+    }
+
+    private void writeBean(BeanAdapter beanAdapter, Writer writer, Locale locale, int depth) throws IOException {
+        writer.append("{");
+
+        String[] keys = propertyKeys.get(beanAdapter.getBean().getClass()).getKeys(beanAdapter.getPropertyNames());
+
+        for (int i = 0; i < keys.length; i++) {
+            startElement(i, writer, depth);
+
+            writer.append(keys[i]);
+
+            if (!compact) {
+                writer.append(" ");
+            }
+
+            writeValue(beanAdapter.getPropertyValue(i), writer, locale, depth + 1);
         }
+
+        endElements(writer, depth);
+
+        writer.append("}");
     }
 
-    private void indent(Writer writer) throws IOException {
+    private static void indent(Writer writer, int depth) throws IOException {
         for (int i = 0; i < depth; i++) {
             writer.append("  ");
         }
     }
+
+    /**
+     * Registers a serializer for a type. The serializer is used for values of
+     * the given type and of its subtypes, unless a serializer has been
+     * registered for a more specific type. Registered serializers take
+     * precedence over the encoder's built-in handling of a type.
+     *
+     * @param <T> The type of value the serializer writes.
+     *
+     * @param type
+     * The type to which the serializer applies.
+     *
+     * @param serializer
+     * The serializer.
+     */
+    public static <T> void registerSerializer(Class<T> type, JSONSerializer<? super T> serializer) {
+        if (type == null) {
+            throw new IllegalArgumentException();
+        }
+
+        if (serializer == null) {
+            throw new IllegalArgumentException();
+        }
+
+        serializers.put(type, serializer);
+
+        valueWriters = createValueWriters();
+    }
+
+    /**
+     * Removes the serializer registered for a type.
+     *
+     * @param type
+     * The type whose serializer will be removed.
+     */
+    public static void unregisterSerializer(Class<?> type) {
+        if (type == null) {
+            throw new IllegalArgumentException();
+        }
+
+        if (serializers.remove(type) != null) {
+            valueWriters = createValueWriters();
+        }
+    }
+
+    private static ClassValue<ValueWriter> createValueWriters() {
+        return new ClassValue<ValueWriter>() {
+            @Override
+            protected ValueWriter computeValue(Class<?> type) {
+                JSONSerializer<?> serializer = getSerializer(type);
+
+                if (serializer != null) {
+                    return new SerializerValueWriter(serializer);
+                } else if (CharSequence.class.isAssignableFrom(type)) {
+                    return stringWriter;
+                } else if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+                    return longWriter;
+                } else if (type == Double.class) {
+                    return doubleWriter;
+                } else if (type == Float.class) {
+                    return floatWriter;
+                } else if (Number.class.isAssignableFrom(type) || type == Boolean.class) {
+                    return literalWriter;
+                } else if (Date.class.isAssignableFrom(type)) {
+                    return dateWriter;
+                } else if (type == LocalDate.class) {
+                    return localDateWriter;
+                } else if (type == LocalTime.class) {
+                    return localTimeWriter;
+                } else if (type == LocalDateTime.class) {
+                    return localDateTimeWriter;
+                } else if (Iterable.class.isAssignableFrom(type)) {
+                    return iterableWriter;
+                } else if (type == BeanAdapter.class) {
+                    return beanWriter;
+                } else if (Map.class.isAssignableFrom(type)) {
+                    return mapWriter;
+                } else if (type == int[].class) {
+                    return intArrayWriter;
+                } else if (type == long[].class) {
+                    return longArrayWriter;
+                } else if (type == double[].class) {
+                    return doubleArrayWriter;
+                } else if (IntStream.class.isAssignableFrom(type)) {
+                    return intStreamWriter;
+                } else if (LongStream.class.isAssignableFrom(type)) {
+                    return longStreamWriter;
+                } else if (DoubleStream.class.isAssignableFrom(type)) {
+                    return doubleStreamWriter;
+                } else {
+                    return defaultWriter;
+                }
+            }
+        };
+    }
+
+    private static JSONSerializer<?> getSerializer(Class<?> type) {
+        if (serializers.isEmpty()) {
+            return null;
+        }
+
+        // Classes take precedence over interfaces
+        for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+            JSONSerializer<?> serializer = serializers.get(superclass);
+
+            if (serializer != null) {
+                return serializer;
+            }
+        }
+
+        for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+            JSONSerializer<?> serializer = getInterfaceSerializer(superclass);
+
+            if (serializer != null) {
+                return serializer;
+            }
+        }
+
+        return null;
+    }
+
+    private static JSONSerializer<?> getInterfaceSerializer(Class<?> type) {
+        Class<?>[] interfaces = type.getInterfaces();
+
+        for (int i = 0; i < interfaces.length; i++) {
+            JSONSerializer<?> serializer = serializers.get(interfaces[i]);
+
+            if (serializer != null) {
+                return serializer;
+            }
+        }
+
+        for (int i = 0; i < interfaces.length; i++) {
+            JSONSerializer<?> serializer = getInterfaceSerializer(interfaces[i]);
+
+            if (serializer != null) {
+                return serializer;
+            }
+        }
+
+        return null;
+    }
 }
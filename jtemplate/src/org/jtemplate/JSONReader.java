@@ -0,0 +1,568 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Pull parser that reads a JSON document as a sequence of events. Only the
+ * current token is held in memory, so arbitrarily large arrays and objects
+ * can be processed incrementally.
+ */
+public class JSONReader implements Closeable {
+    /**
+     * JSON event enumeration.
+     */
+    public enum Event {
+        /**
+         * The start of an object.
+         */
+        START_OBJECT,
+
+        /**
+         * The end of an object.
+         */
+        END_OBJECT,
+
+        /**
+         * The start of an array.
+         */
+        START_ARRAY,
+
+        /**
+         * The end of an array.
+         */
+        END_ARRAY,
+
+        /**
+         * An object key. The key is available via {@link JSONReader#getString()}.
+         */
+        KEY,
+
+        /**
+         * A string value. The value is available via {@link JSONReader#getString()}.
+         */
+        STRING,
+
+        /**
+         * A number value. The value is available via {@link JSONReader#getNumber()}.
+         */
+        NUMBER,
+
+        /**
+         * A boolean value. The value is available via {@link JSONReader#getBoolean()}.
+         */
+        BOOLEAN,
+
+        /**
+         * A null value.
+         */
+        NULL
+    }
+
+    // Parser state enumeration
+    private enum State {
+        VALUE,
+        KEY,
+        COLON,
+        AFTER_VALUE
+    }
+
+    private Reader reader;
+
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private boolean[] containers = new boolean[16];
+    private int depth = 0;
+
+    private State state = State.VALUE;
+    private boolean first = false;
+
+    private StringBuilder tokenBuilder = new StringBuilder();
+
+    private String string = null;
+    private Number number = null;
+    private boolean bool = false;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int EOF = -1;
+
+    /**
+     * Constructs a new JSON reader.
+     *
+     * @param reader
+     * The character stream to read from.
+     */
+    public JSONReader(Reader reader) {
+        if (reader == null) {
+            throw new IllegalArgumentException();
+        }
+
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @return
+     * The next event, or <tt>null</tt> if the end of the document has been
+     * reached.
+     *
+     * @throws IOException
+     * If an exception occurs, or if the document is not valid JSON.
+     */
+    public Event next() throws IOException {
+        string = null;
+        number = null;
+
+        int c = skipWhitespace();
+
+        if (state == State.AFTER_VALUE) {
+            if (depth == 0) {
+                if (c != EOF) {
+                    throw new IOException("Unexpected content after end of document.");
+                }
+
+                return null;
+            }
+
+            boolean object = containers[depth - 1];
+
+            if (c == ',') {
+                state = object ? State.KEY : State.VALUE;
+                first = false;
+
+                c = skipWhitespace();
+            } else if (c == (object ? '}' : ']')) {
+                depth--;
+
+                return object ? Event.END_OBJECT : Event.END_ARRAY;
+            } else {
+                throw createException(c);
+            }
+        }
+
+        switch (state) {
+            case KEY: {
+                if (first && c == '}') {
+                    depth--;
+
+                    state = State.AFTER_VALUE;
+
+                    return Event.END_OBJECT;
+                }
+
+                if (c != '"') {
+                    throw createException(c);
+                }
+
+                string = readString();
+
+                state = State.COLON;
+
+                return Event.KEY;
+            }
+
+            case COLON: {
+                if (c != ':') {
+                    throw createException(c);
+                }
+
+                c = skipWhitespace();
+
+                break;
+            }
+
+            case VALUE: {
+                if (first && c == ']') {
+                    depth--;
+
+                    state = State.AFTER_VALUE;
+
+                    return Event.END_ARRAY;
+                }
+
+                break;
+            }
+
+            default: {
+                throw new IllegalStateException();
+            }
+        }
+
+        return readValue(c);
+    }
+
+    private Event readValue(int c) throws IOException {
+        Event event;
+        if (c == '{') {
+            push(true);
+
+            state = State.KEY;
+            first = true;
+
+            return Event.START_OBJECT;
+        } else if (c == '[') {
+            push(false);
+
+            state = State.VALUE;
+            first = true;
+
+            return Event.START_ARRAY;
+        } else if (c == '"') {
+            string = readString();
+
+            event = Event.STRING;
+        } else if (c == '-' || (c >= '0' && c <= '9')) {
+            number = readNumber(c);
+
+            event = Event.NUMBER;
+        } else if (c == 't') {
+            readLiteral("rue");
+
+            bool = true;
+
+            event = Event.BOOLEAN;
+        } else if (c == 'f') {
+            readLiteral("alse");
+
+            bool = false;
+
+            event = Event.BOOLEAN;
+        } else if (c == 'n') {
+            readLiteral("ull");
+
+            event = Event.NULL;
+        } else {
+            throw createException(c);
+        }
+
+        state = State.AFTER_VALUE;
+
+        return event;
+    }
+
+    /**
+     * Returns the current key or string value.
+     *
+     * @return
+     * The current key or string value, or <tt>null</tt> if the current event
+     * is not {@link Event#KEY} or {@link Event#STRING}.
+     */
+    public String getString() {
+        return string;
+    }
+
+    /**
+     * Returns the current number value. Integral values are returned as
+     * {@link Integer}, {@link Long}, or {@link BigInteger} instances depending
+     * on their magnitude; all other values are returned as {@link Double}
+     * instances.
+     *
+     * @return
+     * The current number value, or <tt>null</tt> if the current event is not
+     * {@link Event#NUMBER}.
+     */
+    public Number getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the current boolean value.
+     *
+     * @return
+     * The current boolean value.
+     */
+    public boolean getBoolean() {
+        return bool;
+    }
+
+    /**
+     * Returns the current nesting depth.
+     *
+     * @return
+     * The number of objects and arrays that enclose the current position.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void push(boolean object) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+
+        containers[depth++] = object;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+
+            if (limit == EOF) {
+                limit = 0;
+
+                return EOF;
+            }
+        }
+
+        return buffer[position++];
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = read();
+
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            c = read();
+        }
+
+        return c;
+    }
+
+    private String readString() throws IOException {
+        tokenBuilder.setLength(0);
+
+        while (true) {
+            // Copy unescaped runs directly from the buffer
+            int start = position;
+
+            while (position < limit) {
+                char c = buffer[position];
+
+                if (c == '"' || c == '\\' || c < 0x20) {
+                    break;
+                }
+
+                position++;
+            }
+
+            tokenBuilder.append(buffer, start, position - start);
+
+            int c = read();
+
+            if (c == '"') {
+                break;
+            } else if (c == '\\') {
+                tokenBuilder.append(readEscape());
+            } else if (c == EOF) {
+                throw new IOException("Unexpected end of character stream.");
+            } else if (c < 0x20) {
+                throw createException(c);
+            } else {
+                // The buffer was exhausted; continue with the next run
+                position--;
+            }
+        }
+
+        return tokenBuilder.toString();
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/': {
+                return (char)c;
+            }
+
+            case 'b': {
+                return '\b';
+            }
+
+            case 'f': {
+                return '\f';
+            }
+
+            case 'n': {
+                return '\n';
+            }
+
+            case 'r': {
+                return '\r';
+            }
+
+            case 't': {
+                return '\t';
+            }
+
+            case 'u': {
+                int value = 0;
+
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+
+                    if (digit == -1) {
+                        throw new IOException("Invalid escape sequence.");
+                    }
+
+                    value = (value << 4) | digit;
+                }
+
+                return (char)value;
+            }
+
+            case EOF: {
+                throw new IOException("Unexpected end of character stream.");
+            }
+
+            default: {
+                throw new IOException("Invalid escape sequence.");
+            }
+        }
+    }
+
+    private Number readNumber(int c) throws IOException {
+        tokenBuilder.setLength(0);
+
+        boolean integral = true;
+
+        while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+            if (c == '.' || c == 'e' || c == 'E') {
+                integral = false;
+            }
+
+            tokenBuilder.append((char)c);
+
+            c = read();
+        }
+
+        // Return the terminating character to the buffer
+        if (c != EOF) {
+            position--;
+        }
+
+        String token = tokenBuilder.toString();
+
+        if (!isValidNumber(token)) {
+            throw new IOException(String.format("Invalid number \"%s\".", token));
+        }
+
+        if (integral) {
+            if (token.length() < 19) {
+                long value = Long.parseLong(token);
+
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int)value;
+                } else {
+                    return value;
+                }
+            } else {
+                BigInteger value = new BigInteger(token);
+
+                if (value.bitLength() < 64) {
+                    return value.longValue();
+                } else {
+                    return value;
+                }
+            }
+        } else {
+            return Double.parseDouble(token);
+        }
+    }
+
+    private static boolean isValidNumber(String token) {
+        int n = token.length();
+
+        int i = 0;
+
+        if (i < n && token.charAt(i) == '-') {
+            i++;
+        }
+
+        // Integer part
+        if (i < n && token.charAt(i) == '0') {
+            i++;
+        } else {
+            int start = i;
+
+            i = skipDigits(token, i);
+
+            if (i == start) {
+                return false;
+            }
+        }
+
+        // Fraction
+        if (i < n && token.charAt(i) == '.') {
+            int start = ++i;
+
+            i = skipDigits(token, i);
+
+            if (i == start) {
+                return false;
+            }
+        }
+
+        // Exponent
+        if (i < n && (token.charAt(i) == 'e' || token.charAt(i) == 'E')) {
+            i++;
+
+            if (i < n && (token.charAt(i) == '+' || token.charAt(i) == '-')) {
+                i++;
+            }
+
+            int start = i;
+
+            i = skipDigits(token, i);
+
+            if (i == start) {
+                return false;
+            }
+        }
+
+        return i == n;
+    }
+
+    private static int skipDigits(String token, int i) {
+        while (i < token.length() && token.charAt(i) >= '0' && token.charAt(i) <= '9') {
+            i++;
+        }
+
+        return i;
+    }
+
+    private void readLiteral(String suffix) throws IOException {
+        for (int i = 0, n = suffix.length(); i < n; i++) {
+            int c = read();
+
+            if (c != suffix.charAt(i)) {
+                throw createException(c);
+            }
+        }
+    }
+
+    private static IOException createException(int c) {
+        if (c == EOF) {
+            return new IOException("Unexpected end of character stream.");
+        } else {
+            return new IOException(String.format("Unexpected character '%c'.", (char)c));
+        }
+    }
+}
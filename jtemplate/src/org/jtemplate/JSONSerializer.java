@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Interface representing a JSON serializer for a specific type.
+ *
+ * @param <T> The type of value the serializer writes.
+ */
+public interface JSONSerializer<T> {
+    /**
+     * Writes a value as JSON.
+     *
+     * @param value
+     * The value to write. The value will never be <tt>null</tt>.
+     *
+     * @param writer
+     * The character stream to write to. The serializer must write exactly one
+     * complete JSON value.
+     *
+     * @param locale
+     * The locale to use when writing the value.
+     *
+     * @throws IOException
+     * If an exception occurs.
+     */
+    public void writeValue(T value, Writer writer, Locale locale) throws IOException;
+}
@@ -14,9 +14,11 @@
 
 package org.jtemplate;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
+import java.text.Format;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -24,7 +26,10 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.Date;
+import java.util.Formatter;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Interface representing a modifier.
@@ -50,19 +55,32 @@ public interface Modifier {
 
 // Format modifier
 class FormatModifier implements Modifier {
+    // Localized date/time formatters are immutable and can be shared
+    private static ConcurrentHashMap<Locale, ConcurrentHashMap<String, DateTimeFormatter>> dateTimeFormatters = new ConcurrentHashMap<>();
+
+    // Number and date formats are not thread-safe and are cached per thread
+    private static ThreadLocal<HashMap<Locale, HashMap<String, Format>>> formats = new ThreadLocal<HashMap<Locale, HashMap<String, Format>>>() {
+        @Override
+        protected HashMap<Locale, HashMap<String, Format>> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private static ThreadLocal<Formatter> formatters = new ThreadLocal<Formatter>() {
+        @Override
+        protected Formatter initialValue() {
+            return new Formatter(new StringBuilder());
+        }
+    };
+
     @Override
     public Object apply(Object value, String argument, Locale locale) {
         Object result;
         if (argument != null) {
             switch (argument) {
-                case "currency": {
-                    result = NumberFormat.getCurrencyInstance(locale).format(value);
-
-                    break;
-                }
-
+                case "currency":
                 case "percent": {
-                    result = NumberFormat.getPercentInstance(locale).format(value);
+                    result = getFormat(argument, locale).format(value);
 
                     break;
                 }
@@ -73,254 +91,443 @@ class FormatModifier implements Modifier {
                     break;
                 }
 
-                case "fullDate": {
+                case "fullDate":
+                case "longDate":
+                case "mediumDate":
+                case "shortDate": {
                     if (value instanceof LocalDate) {
-                        result = ((LocalDate)value).format(DateTimeFormatter.ofLocalizedDate(FormatStyle.FULL).withLocale(locale));
+                        result = ((LocalDate)value).format(getDateTimeFormatter(argument, locale));
                     } else {
-                        result = DateFormat.getDateInstance(DateFormat.FULL, locale).format(value);
+                        result = getFormat(argument, locale).format(value);
                     }
 
                     break;
                 }
 
-                case "longDate": {
-                    if (value instanceof LocalDate) {
-                        result = ((LocalDate)value).format(DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG).withLocale(locale));
-                    } else {
-                        result = DateFormat.getDateInstance(DateFormat.LONG, locale).format(value);
-                    }
+                case "isoLocalDate": {
+                    result = ((LocalDate)value).format(DateTimeFormatter.ISO_LOCAL_DATE);
 
                     break;
                 }
 
-                case "mediumDate": {
-                    if (value instanceof LocalDate) {
-                        result = ((LocalDate)value).format(DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(locale));
+                case "fullTime":
+                case "longTime":
+                case "mediumTime":
+                case "shortTime": {
+                    if (value instanceof LocalTime) {
+                        result = ((LocalTime)value).format(getDateTimeFormatter(argument, locale));
                     } else {
-                        result = DateFormat.getDateInstance(DateFormat.MEDIUM, locale).format(value);
+                        result = getFormat(argument, locale).format(value);
                     }
 
                     break;
                 }
 
-                case "shortDate": {
-                    if (value instanceof LocalDate) {
-                        result = ((LocalDate)value).format(DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).withLocale(locale));
+                case "isoLocalTime": {
+                    result = ((LocalTime)value).format(DateTimeFormatter.ISO_LOCAL_TIME);
+
+                    break;
+                }
+
+                case "fullDateTime":
+                case "longDateTime":
+                case "mediumDateTime":
+                case "shortDateTime": {
+                    if (value instanceof LocalDateTime) {
+                        result = ((LocalDateTime)value).format(getDateTimeFormatter(argument, locale));
                     } else {
-                        result = DateFormat.getDateInstance(DateFormat.SHORT, locale).format(value);
+                        result = getFormat(argument, locale).format(value);
                     }
 
                     break;
                 }
 
-                case "isoLocalDate": {
-                    result = ((LocalDate)value).format(DateTimeFormatter.ISO_LOCAL_DATE);
+                case "isoLocalDateTime": {
+                    result = ((LocalDateTime)value).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
 
                     break;
                 }
 
-                case "fullTime": {
-                    if (value instanceof LocalTime) {
-                        result = ((LocalTime)value).format(DateTimeFormatter.ofLocalizedTime(FormatStyle.FULL).withLocale(locale));
-                    } else {
-                        result = DateFormat.getTimeInstance(DateFormat.FULL, locale).format(value);
-                    }
+                default: {
+                    result = format(argument, value, locale);
 
                     break;
                 }
+            }
+        } else {
+            result = value;
+        }
 
-                case "longTime": {
-                    if (value instanceof LocalTime) {
-                        result = ((LocalTime)value).format(DateTimeFormatter.ofLocalizedTime(FormatStyle.LONG).withLocale(locale));
-                    } else {
-                        result = DateFormat.getTimeInstance(DateFormat.LONG, locale).format(value);
-                    }
+        return result;
+    }
+
+    private static Format getFormat(String argument, Locale locale) {
+        HashMap<Locale, HashMap<String, Format>> formats = FormatModifier.formats.get();
+
+        HashMap<String, Format> localeFormats = formats.get(locale);
+
+        if (localeFormats == null) {
+            localeFormats = new HashMap<>();
+
+            formats.put(locale, localeFormats);
+        }
+
+        Format format = localeFormats.get(argument);
+
+        if (format == null) {
+            switch (argument) {
+                case "currency": {
+                    format = NumberFormat.getCurrencyInstance(locale);
+                    break;
+                }
 
+                case "percent": {
+                    format = NumberFormat.getPercentInstance(locale);
                     break;
                 }
 
-                case "mediumTime": {
-                    if (value instanceof LocalTime) {
-                        result = ((LocalTime)value).format(DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM).withLocale(locale));
-                    } else {
-                        result = DateFormat.getTimeInstance(DateFormat.MEDIUM, locale).format(value);
-                    }
+                case "fullDate": {
+                    format = DateFormat.getDateInstance(DateFormat.FULL, locale);
+                    break;
+                }
 
+                case "longDate": {
+                    format = DateFormat.getDateInstance(DateFormat.LONG, locale);
                     break;
                 }
 
-                case "shortTime": {
-                    if (value instanceof LocalTime) {
-                        result = ((LocalTime)value).format(DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT).withLocale(locale));
-                    } else {
-                        result = DateFormat.getTimeInstance(DateFormat.SHORT, locale).format(value);
-                    }
+                case "mediumDate": {
+                    format = DateFormat.getDateInstance(DateFormat.MEDIUM, locale);
+                    break;
+                }
 
+                case "shortDate": {
+                    format = DateFormat.getDateInstance(DateFormat.SHORT, locale);
                     break;
                 }
 
-                case "isoLocalTime": {
-                    result = ((LocalTime)value).format(DateTimeFormatter.ISO_LOCAL_TIME);
+                case "fullTime": {
+                    format = DateFormat.getTimeInstance(DateFormat.FULL, locale);
+                    break;
+                }
 
+                case "longTime": {
+                    format = DateFormat.getTimeInstance(DateFormat.LONG, locale);
                     break;
                 }
 
-                case "fullDateTime": {
-                    if (value instanceof LocalDateTime) {
-                        result = ((LocalDateTime)value).format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL).withLocale(locale));
-                    } else {
-                        result = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL, locale).format(value);
-                    }
+                case "mediumTime": {
+                    format = DateFormat.getTimeInstance(DateFormat.MEDIUM, locale);
+                    break;
+                }
 
+                case "shortTime": {
+                    format = DateFormat.getTimeInstance(DateFormat.SHORT, locale);
                     break;
                 }
 
-                case "longDateTime": {
-                    if (value instanceof LocalDateTime) {
-                        result = ((LocalDateTime)value).format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.LONG).withLocale(locale));
-                    } else {
-                        result = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.LONG, locale).format(value);
-                    }
+                case "fullDateTime": {
+                    format = DateFormat.getDateTimeInstance(DateFormat.FULL, DateFormat.FULL, locale);
+                    break;
+                }
 
+                case "longDateTime": {
+                    format = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.LONG, locale);
                     break;
                 }
 
                 case "mediumDateTime": {
-                    if (value instanceof LocalDateTime) {
-                        result = ((LocalDateTime)value).format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM).withLocale(locale));
-                    } else {
-                        result = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM, locale).format(value);
-                    }
-
+                    format = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM, locale);
                     break;
                 }
 
                 case "shortDateTime": {
-                    if (value instanceof LocalDateTime) {
-                        result = ((LocalDateTime)value).format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT).withLocale(locale));
-                    } else {
-                        result = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale).format(value);
-                    }
+                    format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, locale);
+                    break;
+                }
 
+                default: {
+                    throw new IllegalArgumentException();
+                }
+            }
+
+            localeFormats.put(argument, format);
+        }
+
+        return format;
+    }
+
+    private static DateTimeFormatter getDateTimeFormatter(String argument, Locale locale) {
+        ConcurrentHashMap<String, DateTimeFormatter> localeFormatters = dateTimeFormatters.get(locale);
+
+        if (localeFormatters == null) {
+            localeFormatters = new ConcurrentHashMap<>();
+
+            ConcurrentHashMap<String, DateTimeFormatter> current = dateTimeFormatters.putIfAbsent(locale, localeFormatters);
+
+            if (current != null) {
+                localeFormatters = current;
+            }
+        }
+
+        DateTimeFormatter dateTimeFormatter = localeFormatters.get(argument);
+
+        if (dateTimeFormatter == null) {
+            switch (argument) {
+                case "fullDate": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.FULL);
                     break;
                 }
 
-                case "isoLocalDateTime": {
-                    result = ((LocalDateTime)value).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+                case "longDate": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG);
+                    break;
+                }
 
+                case "mediumDate": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM);
                     break;
                 }
 
-                default: {
-                    result = String.format(locale, argument, value);
+                case "shortDate": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
+                    break;
+                }
 
+                case "fullTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedTime(FormatStyle.FULL);
                     break;
                 }
+
+                case "longTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedTime(FormatStyle.LONG);
+                    break;
+                }
+
+                case "mediumTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM);
+                    break;
+                }
+
+                case "shortTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT);
+                    break;
+                }
+
+                case "fullDateTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL);
+                    break;
+                }
+
+                case "longDateTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.LONG);
+                    break;
+                }
+
+                case "mediumDateTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM);
+                    break;
+                }
+
+                case "shortDateTime": {
+                    dateTimeFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT);
+                    break;
+                }
+
+                default: {
+                    throw new IllegalArgumentException();
+                }
             }
-        } else {
-            result = value;
+
+            dateTimeFormatter = dateTimeFormatter.withLocale(locale);
+
+            localeFormatters.put(argument, dateTimeFormatter);
         }
 
-        return result;
+        return dateTimeFormatter;
+    }
+
+    private static String format(String pattern, Object value, Locale locale) {
+        Formatter formatter = formatters.get();
+
+        // Fall back to a new formatter if the cached instance is already in use
+        if (formatter == null) {
+            return String.format(locale, pattern, value);
+        }
+
+        formatters.set(null);
+
+        try {
+            StringBuilder builder = (StringBuilder)formatter.out();
+
+            builder.setLength(0);
+
+            formatter.format(locale, pattern, value);
+
+            return builder.toString();
+        } finally {
+            formatters.set(formatter);
+        }
     }
 }
 
 // CSV escape modifier
-class CSVEscapeModifier implements Modifier {
+class CSVEscapeModifier implements StreamingModifier {
     @Override
-    public Object apply(Object value, String argument, Locale locale) {
-        StringBuilder resultBuilder = new StringBuilder();
-
+    public void write(Object value, String argument, Locale locale, Writer writer) throws IOException {
         String string = value.toString();
 
+        int start = 0;
+
         for (int i = 0, n = string.length(); i < n; i++) {
-            char c = string.charAt(i);
+            if (string.charAt(i) == '"') {
+                // Write the preceding text and the quote; the quote is then
+                // written again as part of the next run
+                writer.write(string, start, i + 1 - start);
 
-            if (c == '"') {
-                resultBuilder.append(c);
+                start = i;
             }
-
-            resultBuilder.append(c);
         }
 
-        return resultBuilder.toString();
+        writer.write(string, start, string.length() - start);
     }
 }
 
 // JSON escape modifier
-class JSONEscapeModifier implements Modifier {
+class JSONEscapeModifier implements StreamingModifier {
     @Override
-    public Object apply(Object value, String argument, Locale locale) {
-        StringBuilder resultBuilder = new StringBuilder();
-
+    public void write(Object value, String argument, Locale locale, Writer writer) throws IOException {
         String string = value.toString();
 
+        int start = 0;
+
         for (int i = 0, n = string.length(); i < n; i++) {
             char c = string.charAt(i);
 
-            if (c == '"' || c == '\\') {
-                resultBuilder.append("\\" + c);
+            String escape;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
             } else if (c == '\b') {
-                resultBuilder.append("\\b");
+                escape = "\\b";
             } else if (c == '\f') {
-                resultBuilder.append("\\f");
+                escape = "\\f";
             } else if (c == '\n') {
-                resultBuilder.append("\\n");
+                escape = "\\n";
             } else if (c == '\r') {
-                resultBuilder.append("\\r");
+                escape = "\\r";
             } else if (c == '\t') {
-                resultBuilder.append("\\t");
+                escape = "\\t";
             } else {
-                resultBuilder.append(c);
+                continue;
             }
+
+            writer.write(string, start, i - start);
+            writer.write(escape);
+
+            start = i + 1;
         }
 
-        return resultBuilder.toString();
+        writer.write(string, start, string.length() - start);
     }
 }
 
 // Markup escape modifier
-class MarkupEscapeModifier implements Modifier {
+class MarkupEscapeModifier implements StreamingModifier {
     @Override
-    public Object apply(Object value, String argument, Locale locale) {
-        StringBuilder resultBuilder = new StringBuilder();
-
+    public void write(Object value, String argument, Locale locale, Writer writer) throws IOException {
         String string = value.toString();
 
+        int start = 0;
+
         for (int i = 0, n = string.length(); i < n; i++) {
             char c = string.charAt(i);
 
+            String escape;
             if (c == '<') {
-                resultBuilder.append("&lt;");
+                escape = "&lt;";
             } else if (c == '>') {
-                resultBuilder.append("&gt;");
+                escape = "&gt;";
             } else if (c == '&') {
-                resultBuilder.append("&amp;");
+                escape = "&amp;";
             } else if (c == '"') {
-                resultBuilder.append("&quot;");
+                escape = "&quot;";
             } else {
-                resultBuilder.append(c);
+                continue;
             }
+
+            writer.write(string, start, i - start);
+            writer.write(escape);
+
+            start = i + 1;
         }
 
-        return resultBuilder.toString();
+        writer.write(string, start, string.length() - start);
     }
 }
 
-// URL escape modifier
-class URLEscapeModifier implements Modifier {
-    private static final String UTF_8_ENCODING = "UTF-8";
+// URL escape modifier; produces the same output as URLEncoder using UTF-8
+class URLEscapeModifier implements StreamingModifier {
+    private static final char[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
 
     @Override
-    public Object apply(Object value, String argument, Locale locale) {
-        String result;
-        try {
-            result = URLEncoder.encode(value.toString(), UTF_8_ENCODING);
-        } catch (UnsupportedEncodingException exception) {
-            throw new RuntimeException(exception);
+    public void write(Object value, String argument, Locale locale, Writer writer) throws IOException {
+        String string = value.toString();
+
+        int start = 0;
+
+        int i = 0;
+        int n = string.length();
+
+        while (i < n) {
+            char c = string.charAt(i);
+
+            if (isUnreserved(c)) {
+                i++;
+                continue;
+            }
+
+            writer.write(string, start, i - start);
+
+            if (c == ' ') {
+                writer.write('+');
+
+                i++;
+            } else {
+                // Encode the run of reserved characters as a unit so that
+                // surrogate pairs are converted correctly
+                int j = i + 1;
+
+                while (j < n && !isUnreserved(string.charAt(j)) && string.charAt(j) != ' ') {
+                    j++;
+                }
+
+                byte[] bytes = string.substring(i, j).getBytes(StandardCharsets.UTF_8);
+
+                for (int k = 0; k < bytes.length; k++) {
+                    int b = bytes[k] & 0xff;
+
+                    writer.write('%');
+                    writer.write(HEX_DIGITS[b >> 4]);
+                    writer.write(HEX_DIGITS[b & 0x0f]);
+                }
+
+                i = j;
+            }
+
+            start = i;
         }
 
-        return result;
+        writer.write(string, start, n - start);
     }
-}
 
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z')
+            || (c >= 'A' && c <= 'Z')
+            || (c >= '0' && c <= '9')
+            || c == '-' || c == '_' || c == '.' || c == '*';
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+/**
+ * Interface representing a converter that produces service method arguments
+ * of a specific type from request parameter values.
+ *
+ * @param <T> The type of argument the converter produces.
+ */
+public interface ParameterConverter<T> {
+    /**
+     * Converts a parameter value.
+     *
+     * @param value
+     * The value to convert. The value will never be <tt>null</tt>.
+     *
+     * @return
+     * The converted value.
+     */
+    public T convert(String value);
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Interface representing a modifier that writes its result directly to the
+ * output stream. When a streaming modifier is the last modifier applied to a
+ * variable, the modified value is written without creating an intermediate
+ * result.
+ */
+public interface StreamingModifier extends Modifier {
+    /**
+     * Applies the modifier and writes the result to the output stream.
+     *
+     * @param value
+     * The value to which the modifier is being be applied.
+     *
+     * @param argument
+     * The modifier argument, or <tt>null</tt> if no argument was provided.
+     *
+     * @param locale
+     * The locale in which the modifier is being applied.
+     *
+     * @param writer
+     * The output stream.
+     *
+     * @throws IOException
+     * If an exception occurs.
+     */
+    public void write(Object value, String argument, Locale locale, Writer writer) throws IOException;
+
+    @Override
+    public default Object apply(Object value, String argument, Locale locale) {
+        StringWriter writer = new StringWriter();
+
+        try {
+            write(value, argument, locale, writer);
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+
+        return writer.toString();
+    }
+}
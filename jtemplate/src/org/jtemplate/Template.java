@@ -0,0 +1,451 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Compiled template. Templates are immutable and may be shared by multiple
+ * threads.
+ */
+class Template {
+    // Node type enumeration
+    enum NodeType {
+        TEXT,
+        VARIABLE,
+        SECTION,
+        INCLUDE
+    }
+
+    // Node
+    static abstract class Node {
+        public final NodeType type;
+
+        public Node(NodeType type) {
+            this.type = type;
+        }
+    }
+
+    // Text node; the text is a range of the template's source characters,
+    // optionally pre-encoded in the template's character encoding
+    static class TextNode extends Node {
+        public final char[] chars;
+        public final int offset;
+        public final int length;
+
+        public final byte[] bytes;
+
+        public TextNode(char[] chars, int offset, int length, byte[] bytes) {
+            super(NodeType.TEXT);
+
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+
+            this.bytes = bytes;
+        }
+    }
+
+    // Variable type enumeration
+    enum VariableType {
+        RESOURCE,
+        CONTEXT,
+        SELF,
+        PATH
+    }
+
+    // Variable node
+    static class VariableNode extends Node {
+        public final VariableType variableType;
+
+        public final String name;
+        public final String[] path;
+
+        public final ModifierReference[] modifierReferences;
+
+        public VariableNode(VariableType variableType, String name, String[] path, ModifierReference[] modifierReferences) {
+            super(NodeType.VARIABLE);
+
+            this.variableType = variableType;
+
+            this.name = name;
+            this.path = path;
+
+            this.modifierReferences = modifierReferences;
+        }
+    }
+
+    // Modifier reference; the modifier is resolved by name when the template
+    // is applied, so changes to the modifier map take effect immediately
+    static class ModifierReference {
+        public final String name;
+        public final String argument;
+
+        public ModifierReference(String name, String argument) {
+            this.name = name;
+            this.argument = argument;
+        }
+    }
+
+    // Section node; the section's content occupies the nodes between the
+    // section node and the end index
+    static class SectionNode extends Node {
+        public final String name;
+        public final String separator;
+
+        public final int end;
+
+        public SectionNode(String name, String separator, int end) {
+            super(NodeType.SECTION);
+
+            this.name = name;
+            this.separator = separator;
+
+            this.end = end;
+        }
+    }
+
+    // Include node; the include is resolved against the URL of the root
+    // template when the template is applied
+    static class IncludeNode extends Node {
+        public final String name;
+
+        public IncludeNode(String name) {
+            super(NodeType.INCLUDE);
+
+            this.name = name;
+        }
+    }
+
+    // Marker type enumeration
+    private enum MarkerType {
+        SECTION_START,
+        SECTION_END,
+        INCLUDE,
+        COMMENT,
+        VARIABLE
+    }
+
+    // Template parser
+    private static class Parser {
+        private char[] chars;
+        private Charset charset;
+
+        private int position = 0;
+
+        public Parser(char[] chars, Charset charset) {
+            this.chars = chars;
+            this.charset = charset;
+        }
+
+        private VariableNode createVariableNode(String marker) throws IOException {
+            String[] components = marker.split(":");
+
+            if (components.length == 0) {
+                throw new IOException("Invalid marker.");
+            }
+
+            String key = components[0];
+
+            VariableType variableType;
+            String name;
+            String[] path;
+            if (key.startsWith(RESOURCE_PREFIX)) {
+                variableType = VariableType.RESOURCE;
+                name = key.substring(RESOURCE_PREFIX.length());
+                path = null;
+            } else if (key.startsWith(CONTEXT_PREFIX)) {
+                variableType = VariableType.CONTEXT;
+                name = key.substring(CONTEXT_PREFIX.length());
+                path = null;
+            } else if (key.equals(".")) {
+                variableType = VariableType.SELF;
+                name = key;
+                path = null;
+            } else {
+                variableType = VariableType.PATH;
+                name = key;
+                path = key.split("\\.");
+            }
+
+            ModifierReference[] modifierReferences = new ModifierReference[components.length - 1];
+
+            for (int i = 1; i < components.length; i++) {
+                String component = components[i];
+
+                int j = component.indexOf('=');
+
+                String modifierName, argument;
+                if (j == -1) {
+                    modifierName = component;
+                    argument = null;
+                } else {
+                    modifierName = component.substring(0, j);
+                    argument = component.substring(j + 1);
+                }
+
+                modifierReferences[i - 1] = new ModifierReference(modifierName, argument);
+            }
+
+            return new VariableNode(variableType, name, path, modifierReferences);
+        }
+
+        private TextNode createTextNode(int offset, int length) {
+            byte[] bytes;
+            if (charset != null) {
+                bytes = new String(chars, offset, length).getBytes(charset);
+            } else {
+                bytes = null;
+            }
+
+            return new TextNode(chars, offset, length, bytes);
+        }
+
+        private int read() {
+            return (position < chars.length) ? chars[position++] : EOF;
+        }
+
+        public void parse(ArrayList<Node> nodes) throws IOException {
+            int start = position;
+
+            int c = read();
+
+            while (c != EOF) {
+                if (c == '{') {
+                    c = read();
+
+                    if (c == '{') {
+                        int end = position - 2;
+
+                        c = read();
+
+                        MarkerType markerType;
+                        if (c == '#') {
+                            markerType = MarkerType.SECTION_START;
+                        } else if (c == '/') {
+                            markerType = MarkerType.SECTION_END;
+                        } else if (c == '>') {
+                            markerType = MarkerType.INCLUDE;
+                        } else if (c == '!') {
+                            markerType = MarkerType.COMMENT;
+                        } else {
+                            markerType = MarkerType.VARIABLE;
+                        }
+
+                        if (markerType != MarkerType.VARIABLE) {
+                            c = read();
+                        }
+
+                        StringBuilder markerBuilder = new StringBuilder();
+
+                        while (c != '}' && c != EOF) {
+                            markerBuilder.append((char)c);
+
+                            c = read();
+                        }
+
+                        if (c == EOF) {
+                            throw new IOException("Unexpected end of character stream.");
+                        }
+
+                        c = read();
+
+                        if (c != '}') {
+                            throw new IOException("Improperly terminated marker.");
+                        }
+
+                        String marker = markerBuilder.toString();
+
+                        if (marker.length() == 0) {
+                            throw new IOException("Invalid marker.");
+                        }
+
+                        if (end > start) {
+                            nodes.add(createTextNode(start, end - start));
+                        }
+
+                        switch (markerType) {
+                            case SECTION_START: {
+                                String separator = null;
+
+                                int n = marker.length();
+
+                                if (marker.charAt(n - 1) == ']') {
+                                    int i = marker.lastIndexOf('[');
+
+                                    if (i != -1) {
+                                        separator = marker.substring(i + 1, n - 1);
+
+                                        marker = marker.substring(0, i);
+                                    }
+                                }
+
+                                int i = nodes.size();
+
+                                nodes.add(null);
+
+                                parse(nodes);
+
+                                nodes.set(i, new SectionNode(marker, separator, nodes.size()));
+
+                                break;
+                            }
+
+                            case SECTION_END: {
+                                return;
+                            }
+
+                            case INCLUDE: {
+                                nodes.add(new IncludeNode(marker));
+
+                                break;
+                            }
+
+                            case COMMENT: {
+                                // No-op
+                                break;
+                            }
+
+                            case VARIABLE: {
+                                nodes.add(createVariableNode(marker));
+
+                                break;
+                            }
+
+                            default: {
+                                throw new UnsupportedOperationException();
+                            }
+                        }
+
+                        start = position;
+                    } else if (c == EOF) {
+                        break;
+                    }
+                }
+
+                c = read();
+            }
+
+            if (position > start) {
+                nodes.add(createTextNode(start, position - start));
+            }
+        }
+    }
+
+    private URL url;
+    private Node[] nodes;
+    private int length;
+
+    private static final int EOF = -1;
+
+    private static final String RESOURCE_PREFIX = "@";
+    private static final String CONTEXT_PREFIX = "$";
+
+    private Template(URL url, Node[] nodes, int length) {
+        this.url = url;
+        this.nodes = nodes;
+        this.length = length;
+    }
+
+    /**
+     * Returns the URL of the template.
+     *
+     * @return
+     * The URL of the template.
+     */
+    public URL getURL() {
+        return url;
+    }
+
+    /**
+     * Returns the template's nodes, in document order.
+     *
+     * @return
+     * The template's nodes.
+     */
+    public Node[] getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the length of the template's source text.
+     *
+     * @return
+     * The number of characters in the template's source text.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param url
+     * The URL of the template.
+     *
+     * @param charset
+     * The character encoding used by the template.
+     *
+     * @return
+     * The compiled template.
+     *
+     * @throws IOException
+     * If an exception occurs.
+     */
+    public static Template compile(URL url, Charset charset) throws IOException {
+        StringBuilder textBuilder = new StringBuilder();
+
+        try (InputStream inputStream = url.openStream()) {
+            Reader reader = new InputStreamReader(inputStream, charset);
+
+            char[] buffer = new char[4096];
+
+            int n;
+            while ((n = reader.read(buffer)) != EOF) {
+                textBuilder.append(buffer, 0, n);
+            }
+        }
+
+        // A section end marker at the root level terminates the template
+        ArrayList<Node> nodes = new ArrayList<>();
+
+        char[] chars = new char[textBuilder.length()];
+
+        textBuilder.getChars(0, chars.length, chars, 0);
+
+        // Text can only be pre-encoded when the encoding is stateless
+        Charset textCharset;
+        if (charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII)) {
+            textCharset = charset;
+        } else {
+            textCharset = null;
+        }
+
+        Parser parser = new Parser(chars, textCharset);
+
+        parser.parse(nodes);
+
+        return new Template(url, nodes.toArray(new Node[nodes.size()]), chars.length);
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class that caches compiled templates. Templates are identified by URL and
+ * character encoding. The cache is bounded both by the number of entries it
+ * contains and by the total number of template characters; when either limit
+ * is exceeded, the least recently used entries are evicted until the cache is
+ * reduced to seven eighths of its limits. Cache hits do not acquire any locks.
+ * <p>
+ * If a reload interval is set, the cache periodically checks the modification
+ * date of each template it returns and replaces the template with a recompiled
+ * copy if the source document has changed. At most one request per entry and
+ * interval performs the check; all other requests continue to use the current
+ * template without waiting. If the document cannot be read or compiled, the
+ * current template remains in use until a later check succeeds.
+ */
+public class TemplateCache {
+    // Cache key
+    private static class Key {
+        public final String url;
+        public final Charset charset;
+
+        public Key(String url, Charset charset) {
+            this.url = url;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key)object;
+
+            return url.equals(key.url) && charset.equals(key.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            return url.hashCode() * 31 + charset.hashCode();
+        }
+    }
+
+    // Cache entry
+    private static class Entry {
+        public final Key key;
+
+        public volatile Template template;
+        public volatile long lastModified;
+
+        public volatile long accessTime;
+        public final AtomicLong checkTime = new AtomicLong();
+
+        // Snapshot of the access time, taken while the eviction lock is held
+        public long evictionTime = 0;
+
+        public Entry(Key key, Template template, long lastModified) {
+            this.key = key;
+
+            this.template = template;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private int maximumSize;
+    private long maximumWeight;
+
+    private volatile long reloadInterval = 0;
+
+    private ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private AtomicLong weight = new AtomicLong();
+
+    // Access times are logical; hits record the current tick, and each
+    // insertion moves the clock past all previously recorded ticks
+    private AtomicLong clock = new AtomicLong();
+
+    private final Object evictionLock = new Object();
+
+    private LongAdder hitCount = new LongAdder();
+    private LongAdder missCount = new LongAdder();
+    private LongAdder evictionCount = new LongAdder();
+
+    private static final int DEFAULT_MAXIMUM_SIZE = 1024;
+    private static final long DEFAULT_MAXIMUM_WEIGHT = 8L * 1024 * 1024;
+
+    private static final int LOW_WATER_DIVISOR = 8;
+
+    private static final TemplateCache sharedCache = new TemplateCache();
+
+    /**
+     * Constructs a new template cache using the default limits.
+     */
+    public TemplateCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * Constructs a new template cache.
+     *
+     * @param maximumSize
+     * The maximum number of templates the cache may contain.
+     *
+     * @param maximumWeight
+     * The maximum number of template characters the cache may contain.
+     */
+    public TemplateCache(int maximumSize, long maximumWeight) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Returns the maximum number of templates the cache may contain.
+     *
+     * @return
+     * The maximum cache size.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the maximum number of template characters the cache may contain.
+     *
+     * @return
+     * The maximum cache weight.
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Returns the interval at which cached templates are checked for changes.
+     *
+     * @return
+     * The reload interval, in milliseconds, or 0 if templates are not
+     * reloaded.
+     */
+    public long getReloadInterval() {
+        return reloadInterval;
+    }
+
+    /**
+     * Sets the interval at which cached templates are checked for changes.
+     * Reloading is disabled by default.
+     *
+     * @param reloadInterval
+     * The reload interval, in milliseconds, or 0 to disable reloading.
+     */
+    public void setReloadInterval(long reloadInterval) {
+        if (reloadInterval < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.reloadInterval = reloadInterval;
+    }
+
+    /**
+     * Returns the number of templates currently in the cache.
+     *
+     * @return
+     * The current cache size.
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of template characters currently in the cache.
+     *
+     * @return
+     * The current cache weight.
+     */
+    public long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Returns the number of requests that were satisfied by a cached template.
+     *
+     * @return
+     * The cache hit count.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of requests that required a template to be compiled.
+     *
+     * @return
+     * The cache miss count.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of templates that have been evicted from the cache.
+     *
+     * @return
+     * The cache eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Removes all templates from the cache.
+     */
+    public void clear() {
+        for (Entry entry : entries.values()) {
+            remove(entry);
+        }
+    }
+
+    Template get(URL url, Charset charset) throws IOException {
+        Key key = new Key(url.toExternalForm(), charset);
+
+        Entry entry = entries.get(key);
+
+        if (entry != null) {
+            hitCount.increment();
+
+            // The access time is only written when it changes, so repeated
+            // hits on the same entry do not contend on it
+            long tick = clock.get();
+
+            if (entry.accessTime != tick) {
+                entry.accessTime = tick;
+            }
+
+            if (reloadInterval > 0) {
+                reload(url, entry);
+            }
+
+            return entry.template;
+        }
+
+        missCount.increment();
+
+        long lastModified = (reloadInterval > 0) ? getLastModified(url) : 0;
+
+        entry = new Entry(key, Template.compile(url, charset), lastModified);
+
+        entry.checkTime.set(System.currentTimeMillis() + reloadInterval);
+
+        entry.accessTime = clock.getAndAdd(2) + 1;
+
+        Entry current = entries.putIfAbsent(key, entry);
+
+        if (current != null) {
+            return current.template;
+        }
+
+        weight.addAndGet(entry.template.getLength());
+
+        if (entries.size() > maximumSize || weight.get() > maximumWeight) {
+            evict();
+        }
+
+        return entry.template;
+    }
+
+    private void reload(URL url, Entry entry) {
+        long now = System.currentTimeMillis();
+        long checkTime = entry.checkTime.get();
+
+        // Only the thread that claims the check performs it
+        if (now - checkTime < 0 || !entry.checkTime.compareAndSet(checkTime, now + reloadInterval)) {
+            return;
+        }
+
+        // If the document cannot be read (for example, because it is being
+        // saved or has been deleted), the current template remains in use and
+        // the check is repeated after the next interval
+        long lastModified;
+        Template template;
+        try {
+            lastModified = getLastModified(url);
+
+            if (lastModified == entry.lastModified) {
+                return;
+            }
+
+            template = Template.compile(url, entry.key.charset);
+        } catch (IOException exception) {
+            return;
+        }
+
+        synchronized (entry) {
+            Template previous = entry.template;
+
+            entry.template = template;
+            entry.lastModified = lastModified;
+
+            if (entries.get(entry.key) == entry) {
+                weight.addAndGet(template.getLength() - previous.getLength());
+            }
+        }
+
+        if (weight.get() > maximumWeight) {
+            evict();
+        }
+    }
+
+    private static long getLastModified(URL url) throws IOException {
+        if (url.getProtocol().equals("file")) {
+            try {
+                return new File(url.toURI()).lastModified();
+            } catch (URISyntaxException exception) {
+                throw new IOException(exception);
+            }
+        }
+
+        URLConnection connection = url.openConnection();
+
+        try {
+            return connection.getLastModified();
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection)connection).disconnect();
+            }
+        }
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            if (entries.size() <= maximumSize && weight.get() <= maximumWeight) {
+                return;
+            }
+
+            // Entries are removed least recently used first until the cache is
+            // reduced to its low-water mark, so a single pass serves a number of
+            // subsequent insertions
+            ArrayList<Entry> candidates = new ArrayList<>(entries.values());
+
+            for (Entry entry : candidates) {
+                entry.evictionTime = entry.accessTime;
+            }
+
+            Collections.sort(candidates, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry entry1, Entry entry2) {
+                    return Long.compare(entry1.evictionTime, entry2.evictionTime);
+                }
+            });
+
+            int lowWaterSize = maximumSize - maximumSize / LOW_WATER_DIVISOR;
+            long lowWaterWeight = maximumWeight - maximumWeight / LOW_WATER_DIVISOR;
+
+            for (int i = 0, n = candidates.size(); i < n && (entries.size() > lowWaterSize || weight.get() > lowWaterWeight); i++) {
+                if (remove(candidates.get(i))) {
+                    evictionCount.increment();
+                }
+            }
+        }
+    }
+
+    private boolean remove(Entry entry) {
+        boolean removed;
+        synchronized (entry) {
+            removed = entries.remove(entry.key, entry);
+
+            if (removed) {
+                weight.addAndGet(-entry.template.getLength());
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns the shared template cache.
+     *
+     * @return
+     * The template cache that is used by default by all template encoders.
+     */
+    public static TemplateCache getSharedCache() {
+        return sharedCache;
+    }
+}
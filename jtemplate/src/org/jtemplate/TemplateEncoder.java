@@ -15,36 +15,22 @@
 package org.jtemplate;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.Charset;
-import java.util.AbstractMap;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Template encoder.
  */
 public class TemplateEncoder extends Encoder {
-    // Marker type enumeration
-    private enum MarkerType {
-        SECTION_START,
-        SECTION_END,
-        INCLUDE,
-        COMMENT,
-        VARIABLE
-    }
-
     private URL url;
     private String mimeType;
     private Charset charset;
@@ -52,8 +38,10 @@ public class TemplateEncoder extends Encoder {
     private String baseName = null;
     private HashMap<String, Object> context = new HashMap<>();
 
-    private Map<String, Reader> includes = new HashMap<>();
-    private LinkedList<Map<String, Reader>> history = new LinkedList<>();
+    private TemplateCache cache = TemplateCache.getSharedCache();
+
+    // Include URLs are resolved against the root template once per encoder
+    private ConcurrentHashMap<String, URL> includeURLs = new ConcurrentHashMap<>();
 
     private static HashMap<String, Modifier> modifiers = new HashMap<>();
 
@@ -66,11 +54,6 @@ public class TemplateEncoder extends Encoder {
         modifiers.put("^csv", new CSVEscapeModifier());
     }
 
-    private static final int EOF = -1;
-
-    private static final String RESOURCE_PREFIX = "@";
-    private static final String CONTEXT_PREFIX = "$";
-
     /**
      * Constructs a new template encoder.
      *
@@ -156,18 +139,55 @@ public class TemplateEncoder extends Encoder {
         return context;
     }
 
+    /**
+     * Returns the cache used to store compiled templates.
+     *
+     * @return
+     * The template cache.
+     */
+    public TemplateCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the cache used to store compiled templates. By default, all template
+     * encoders share the cache returned by {@link TemplateCache#getSharedCache()}.
+     *
+     * @param cache
+     * The template cache.
+     */
+    public void setCache(TemplateCache cache) {
+        if (cache == null) {
+            throw new IllegalArgumentException();
+        }
+
+        this.cache = cache;
+    }
+
     @Override
     public void writeValue(Object value, Writer writer, Locale locale) throws IOException {
         if (value != null) {
-            try (InputStream inputStream = url.openStream()) {
-                Reader reader = new PagedReader(new InputStreamReader(inputStream, getCharset()));
+            writeRoot(value, writer, locale, getTemplate(url), new IdentityHashMap<Template.IncludeNode, Template>());
+        }
+    }
 
-                writeRoot(value, writer, locale, reader);
-            }
+    private Template getTemplate(URL url) throws IOException {
+        return cache.get(url, getCharset());
+    }
+
+    private URL getIncludeURL(String name) throws IOException {
+        URL includeURL = includeURLs.get(name);
+
+        if (includeURL == null) {
+            includeURL = new URL(url, name);
+
+            includeURLs.put(name, includeURL);
         }
+
+        return includeURL;
     }
 
-    private void writeRoot(Object root, Writer writer, Locale locale, Reader reader) throws IOException {
+    private void writeRoot(Object root, Writer writer, Locale locale, Template template, IdentityHashMap<Template.IncludeNode, Template> includes) throws IOException {
         Map<?, ?> dictionary;
         if (root instanceof Map<?, ?>) {
             dictionary = (Map<?, ?>)root;
@@ -175,242 +195,155 @@ public class TemplateEncoder extends Encoder {
             dictionary = Collections.singletonMap(".", root);
         }
 
-        int c = reader.read();
+        Template.Node[] nodes = template.getNodes();
 
-        while (c != EOF) {
-            if (c == '{') {
-                c = reader.read();
+        writeNodes(dictionary, writer, locale, nodes, 0, nodes.length, includes);
+    }
 
-                if (c == '{') {
-                    c = reader.read();
+    private void writeNodes(Map<?, ?> dictionary, Writer writer, Locale locale, Template.Node[] nodes, int start, int end, IdentityHashMap<Template.IncludeNode, Template> includes) throws IOException {
+        for (int i = start; i < end; i++) {
+            Template.Node node = nodes[i];
 
-                    MarkerType markerType;
-                    if (c == '#') {
-                        markerType = MarkerType.SECTION_START;
-                    } else if (c == '/') {
-                        markerType = MarkerType.SECTION_END;
-                    } else if (c == '>') {
-                        markerType = MarkerType.INCLUDE;
-                    } else if (c == '!') {
-                        markerType = MarkerType.COMMENT;
-                    } else {
-                        markerType = MarkerType.VARIABLE;
-                    }
+            switch (node.type) {
+                case TEXT: {
+                    Template.TextNode textNode = (Template.TextNode)node;
 
-                    if (markerType != MarkerType.VARIABLE) {
-                        c = reader.read();
+                    if (textNode.bytes != null && writer instanceof EncodingWriter) {
+                        ((EncodingWriter)writer).writeBytes(textNode.bytes, 0, textNode.bytes.length);
+                    } else {
+                        writer.write(textNode.chars, textNode.offset, textNode.length);
                     }
 
-                    StringBuilder markerBuilder = new StringBuilder();
+                    break;
+                }
 
-                    while (c != '}' && c != EOF) {
-                        markerBuilder.append((char)c);
+                case SECTION: {
+                    Template.SectionNode sectionNode = (Template.SectionNode)node;
 
-                        c = reader.read();
-                    }
+                    Object value = dictionary.get(sectionNode.name);
 
-                    if (c == EOF) {
-                        throw new IOException("Unexpected end of character stream.");
+                    if (value == null) {
+                        value = Collections.emptyList();
                     }
 
-                    c = reader.read();
-
-                    if (c != '}') {
-                        throw new IOException("Improperly terminated marker.");
+                    if (!(value instanceof Iterable<?>)) {
+                        throw new IOException("Invalid section element.");
                     }
 
-                    String marker = markerBuilder.toString();
+                    Iterator<?> iterator = ((Iterable<?>)value).iterator();
 
-                    if (marker.length() == 0) {
-                        throw new IOException("Invalid marker.");
-                    }
+                    int j = 0;
 
-                    switch (markerType) {
-                        case SECTION_START: {
-                            String separator = null;
+                    while (iterator.hasNext()) {
+                        Object element = iterator.next();
 
-                            int n = marker.length();
-
-                            if (marker.charAt(n - 1) == ']') {
-                                int i = marker.lastIndexOf('[');
-
-                                if (i != -1) {
-                                    separator = marker.substring(i + 1, n - 1);
-
-                                    marker = marker.substring(0, i);
-                                }
-                            }
-
-                            history.push(includes);
-
-                            Object value = dictionary.get(marker);
+                        if (j > 0 && sectionNode.separator != null) {
+                            writer.write(sectionNode.separator);
+                        }
 
-                            if (value == null) {
-                                value = Collections.emptyList();
-                            }
+                        Map<?, ?> elementDictionary;
+                        if (element instanceof Map<?, ?>) {
+                            elementDictionary = (Map<?, ?>)element;
+                        } else {
+                            elementDictionary = Collections.singletonMap(".", element);
+                        }
 
-                            if (!(value instanceof Iterable<?>)) {
-                                throw new IOException("Invalid section element.");
-                            }
+                        writeNodes(elementDictionary, writer, locale, nodes, i + 1, sectionNode.end, includes);
 
-                            Iterator<?> iterator = ((Iterable<?>)value).iterator();
+                        flush(++j, writer);
+                    }
 
-                            if (iterator.hasNext()) {
-                                includes = new HashMap<>();
+                    i = sectionNode.end - 1;
 
-                                int i = 0;
+                    break;
+                }
 
-                                while (iterator.hasNext()) {
-                                    Object element = iterator.next();
+                case INCLUDE: {
+                    Template.IncludeNode includeNode = (Template.IncludeNode)node;
 
-                                    if (iterator.hasNext()) {
-                                        reader.mark(0);
-                                    }
+                    // Included templates are retrieved once per call to
+                    // writeValue(), not once per section element
+                    Template template = includes.get(includeNode);
 
-                                    if (i > 0 && separator != null) {
-                                        writer.append(separator);
-                                    }
+                    if (template == null) {
+                        template = getTemplate(getIncludeURL(includeNode.name));
 
-                                    writeRoot(element, writer, locale, reader);
+                        includes.put(includeNode, template);
+                    }
 
-                                    if (iterator.hasNext()) {
-                                        reader.reset();
-                                    }
+                    writeRoot(dictionary, writer, locale, template, includes);
 
-                                    i++;
-                                }
-                            } else {
-                                includes = new AbstractMap<String, Reader>() {
-                                    @Override
-                                    public Reader get(Object key) {
-                                        return new EmptyReader();
-                                    }
-
-                                    @Override
-                                    public Set<Entry<String, Reader>> entrySet() {
-                                        throw new UnsupportedOperationException();
-                                    }
-                                };
-
-                                writeRoot(Collections.emptyMap(), new NullWriter(), locale, reader);
-                            }
+                    break;
+                }
 
-                            includes = history.pop();
+                case VARIABLE: {
+                    Template.VariableNode variableNode = (Template.VariableNode)node;
 
-                            break;
-                        }
+                    Object value;
+                    if (variableNode.variableType == Template.VariableType.RESOURCE) {
+                        if (baseName != null) {
+                            ResourceBundle resourceBundle = ResourceBundle.getBundle(baseName, locale);
 
-                        case SECTION_END: {
-                            // No-op
-                            return;
+                            value = resourceBundle.getString(variableNode.name);
+                        } else {
+                            value = null;
                         }
+                    } else if (variableNode.variableType == Template.VariableType.CONTEXT) {
+                        value = context.get(variableNode.name);
+                    } else if (variableNode.variableType == Template.VariableType.SELF) {
+                        value = dictionary.get(variableNode.name);
+                    } else {
+                        value = dictionary;
 
-                        case INCLUDE: {
-                            Reader include = includes.get(marker);
-
-                            if (include == null) {
-                                URL url = new URL(this.url, marker);
-
-                                try (InputStream inputStream = url.openStream()) {
-                                    include = new PagedReader(new InputStreamReader(inputStream));
-
-                                    writeRoot(dictionary, writer, locale, include);
-
-                                    includes.put(marker, include);
-                                }
-                            } else {
-                                include.reset();
+                        String[] path = variableNode.path;
 
-                                writeRoot(dictionary, writer, locale, include);
+                        for (int j = 0; j < path.length; j++) {
+                            if (!(value instanceof Map<?, ?>)) {
+                                throw new IOException("Invalid path.");
                             }
 
-                            break;
-                        }
+                            value = ((Map<?, ?>)value).get(path[j]);
 
-                        case COMMENT: {
-                            // No-op
-                            break;
+                            if (value == null) {
+                                break;
+                            }
                         }
+                    }
 
-                        case VARIABLE: {
-                            String[] components = marker.split(":");
-
-                            String key = components[0];
-
-                            Object value;
-                            if (key.startsWith(RESOURCE_PREFIX)) {
-                                if (baseName != null) {
-                                    ResourceBundle resourceBundle = ResourceBundle.getBundle(baseName, locale);
-
-                                    value = resourceBundle.getString(key.substring(RESOURCE_PREFIX.length()));
-                                } else {
-                                    value = null;
-                                }
-                            } else if (key.startsWith(CONTEXT_PREFIX)) {
-                                value = context.get(key.substring(CONTEXT_PREFIX.length()));
-                            } else if (key.equals(".")) {
-                                value = dictionary.get(key);
-                            } else {
-                                value = dictionary;
-
-                                String[] path = key.split("\\.");
-
-                                for (int i = 0; i < path.length; i++) {
-                                    if (!(value instanceof Map<?, ?>)) {
-                                        throw new IOException("Invalid path.");
-                                    }
-
-                                    value = ((Map<?, ?>)value).get(path[i]);
-
-                                    if (value == null) {
-                                        break;
-                                    }
-                                }
-                            }
+                    if (value != null) {
+                        Template.ModifierReference[] modifierReferences = variableNode.modifierReferences;
 
-                            if (value != null) {
-                                if (components.length > 1) {
-                                    for (int i = 1; i < components.length; i++) {
-                                        String component = components[i];
+                        int n = modifierReferences.length;
 
-                                        int j = component.indexOf('=');
+                        for (int j = 0; j < n; j++) {
+                            Template.ModifierReference modifierReference = modifierReferences[j];
 
-                                        String name, argument;
-                                        if (j == -1) {
-                                            name = component;
-                                            argument = null;
-                                        } else {
-                                            name = component.substring(0, j);
-                                            argument = component.substring(j + 1);
-                                        }
+                            Modifier modifier = modifiers.get(modifierReference.name);
 
-                                        Modifier modifier = modifiers.get(name);
+                            if (modifier != null) {
+                                // The last modifier may write its result directly
+                                if (j == n - 1 && modifier instanceof StreamingModifier) {
+                                    ((StreamingModifier)modifier).write(value, modifierReference.argument, locale, writer);
 
-                                        if (modifier != null) {
-                                            value = modifier.apply(value, argument, locale);
-                                        }
-                                    }
+                                    value = null;
+                                } else {
+                                    value = modifier.apply(value, modifierReference.argument, locale);
                                 }
-
-                                writer.append(value.toString());
                             }
-
-                            break;
                         }
 
-                        default: {
-                            throw new UnsupportedOperationException();
+                        if (value != null) {
+                            writer.write(value.toString());
                         }
                     }
-                } else {
-                    writer.append('{');
-                    writer.append((char)c);
+
+                    break;
                 }
-            } else {
-                writer.append((char)c);
-            }
 
-            c = reader.read();
+                default: {
+                    throw new UnsupportedOperationException();
+                }
+            }
         }
     }
 
@@ -424,147 +357,3 @@ public class TemplateEncoder extends Encoder {
         return modifiers;
     }
 }
-
-// Paged reader
-class PagedReader extends Reader {
-    private Reader reader;
-    private int pageSize;
-
-    private int position = 0;
-    private int count = 0;
-
-    private boolean endOfFile = false;
-
-    private ArrayList<char[]> pages = new ArrayList<>();
-    private LinkedList<Integer> marks = new LinkedList<>();
-
-    private static int DEFAULT_PAGE_SIZE = 1024;
-    private static int EOF = -1;
-
-    public PagedReader(Reader reader) {
-        this(reader, DEFAULT_PAGE_SIZE);
-    }
-
-    public PagedReader(Reader reader, int pageSize) {
-        if (reader == null) {
-            throw new IllegalArgumentException();
-        }
-
-        this.reader = reader;
-        this.pageSize = pageSize;
-    }
-
-    @Override
-    public int read() throws IOException {
-        int c;
-        if (position < count) {
-            c = pages.get(position / pageSize)[position % pageSize];
-
-            position++;
-        } else if (!endOfFile) {
-            c = reader.read();
-
-            if (c != EOF) {
-                if (position / pageSize == pages.size()) {
-                    pages.add(new char[pageSize]);
-                }
-
-                pages.get(pages.size() - 1)[position % pageSize] = (char)c;
-
-                position++;
-                count++;
-            } else {
-                endOfFile = true;
-            }
-        } else {
-            c = EOF;
-        }
-
-        return c;
-    }
-
-    @Override
-    public int read(char[] cbuf, int off, int len) throws IOException {
-        int c = 0;
-        int n = 0;
-
-        for (int i = off; i < cbuf.length && n < len; i++) {
-            c = read();
-
-            if (c == EOF) {
-                break;
-            }
-
-            cbuf[i] = (char)c;
-
-            n++;
-        }
-
-        return (c == EOF && n == 0) ? EOF : n;
-    }
-
-    @Override
-    public boolean ready() throws IOException {
-        return (position < count) || reader.ready();
-    }
-
-    @Override
-    public void mark(int readAheadLimit) {
-        marks.push(position);
-    }
-
-    @Override
-    public boolean markSupported() {
-        return true;
-    }
-
-    @Override
-    public void reset() {
-        if (marks.isEmpty()) {
-            position = 0;
-        } else {
-            position = marks.pop();
-        }
-    }
-
-    @Override
-    public void close() throws IOException {
-        reader.close();
-    }
-}
-
-// Empty reader
-class EmptyReader extends Reader {
-    @Override
-    public int read(char cbuf[], int off, int len) {
-        return -1;
-    }
-
-    @Override
-    public void reset() {
-        // No-op
-    }
-
-    @Override
-    public void close() {
-        // No-op
-    }
-}
-
-// Null writer
-class NullWriter extends Writer {
-    @Override
-    public void write(char[] cbuf, int off, int len) {
-        // No-op
-    }
-
-    @Override
-    public void flush() {
-        // No-op
-    }
-
-    @Override
-    public void close() {
-        // No-op
-    }
-}
@@ -14,37 +14,50 @@
 
 package org.jtemplate.beans;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.time.temporal.TemporalAccessor;
 import java.util.AbstractList;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
- * Class that presents the properties of a Java Bean object as a map. Property
- * values are adapted as described for {@link #adapt(Object)}.
+ * Class that presents the properties of a Java Bean object as a map. Properties
+ * are defined by getter methods, record components, and public final fields.
+ * Property values are adapted as described for {@link #adapt(Object)}.
  */
 public class BeanAdapter extends AbstractMap<String, Object> {
-    // List adapter
+    // List adapter; in flyweight mode, each iterator repoints a single Bean
+    // adapter at successive elements of the same type
     private static class ListAdapter extends AbstractList<Object> {
         private List<Object> list;
-        private HashMap<Class<?>, HashMap<String, Method>> getterCache;
+        private boolean flyweight;
 
-        public ListAdapter(List<Object> list, HashMap<Class<?>, HashMap<String, Method>> getterCache) {
+        public ListAdapter(List<Object> list, boolean flyweight) {
             this.list = list;
-            this.getterCache = getterCache;
+            this.flyweight = flyweight;
         }
 
         @Override
         public Object get(int index) {
-            return adapt(list.get(index), getterCache);
+            return adapt(list.get(index), flyweight);
         }
 
         @Override
@@ -57,6 +70,8 @@ public class BeanAdapter extends AbstractMap<String, Object> {
             return new Iterator<Object>() {
                 private Iterator<Object> iterator = list.iterator();
 
+                private BeanAdapter view = null;
+
                 @Override
                 public boolean hasNext() {
                     return iterator.hasNext();
@@ -64,7 +79,21 @@ public class BeanAdapter extends AbstractMap<String, Object> {
 
                 @Override
                 public Object next() {
-                    return adapt(iterator.next(), getterCache);
+                    Object element = iterator.next();
+
+                    if (view != null && element != null && element.getClass() == view.bean.getClass()) {
+                        view.bean = element;
+
+                        return view;
+                    }
+
+                    Object value = adapt(element, flyweight);
+
+                    if (flyweight && value instanceof BeanAdapter) {
+                        view = (BeanAdapter)value;
+                    }
+
+                    return value;
                 }
             };
         }
@@ -73,7 +102,7 @@ public class BeanAdapter extends AbstractMap<String, Object> {
     // Map adapter
     private static class MapAdapter extends AbstractMap<Object, Object> {
         private Map<Object, Object> map;
-        private HashMap<Class<?>, HashMap<String, Method>> getterCache;
+        private boolean flyweight;
 
         private Set<Entry<Object, Object>> entrySet = new AbstractSet<Entry<Object, Object>>() {
             @Override
@@ -103,7 +132,7 @@ public class BeanAdapter extends AbstractMap<String, Object> {
 
                             @Override
                             public Object getValue() {
-                                return adapt(entry.getValue(), getterCache);
+                                return adapt(entry.getValue(), flyweight);
                             }
 
                             @Override
@@ -116,14 +145,14 @@ public class BeanAdapter extends AbstractMap<String, Object> {
             }
         };
 
-        public MapAdapter(Map<Object, Object> map, HashMap<Class<?>, HashMap<String, Method>> getterCache) {
+        public MapAdapter(Map<Object, Object> map, boolean flyweight) {
             this.map = map;
-            this.getterCache = getterCache;
+            this.flyweight = flyweight;
         }
 
         @Override
         public Object get(Object key) {
-            return adapt(map.get(key), getterCache);
+            return adapt(map.get(key), flyweight);
         }
 
         @Override
@@ -132,37 +161,146 @@ public class BeanAdapter extends AbstractMap<String, Object> {
         }
     }
 
+    // Property accessor
+    interface Accessor {
+        public Object get(Object bean) throws Throwable;
+    }
+
+    // Property set; contains the names and accessors of a Bean type's
+    // properties, indexed by position
+    private static class PropertySet {
+        public final String[] names;
+        public final Accessor[] accessors;
+
+        public final HashMap<String, Integer> indices;
+
+        public final List<String> nameList;
+
+        public PropertySet(HashMap<String, Member> getters) {
+            int n = getters.size();
+
+            names = new String[n];
+            accessors = new Accessor[n];
+
+            indices = new HashMap<>();
+
+            int i = 0;
+
+            for (Map.Entry<String, Member> entry : getters.entrySet()) {
+                names[i] = entry.getKey();
+                accessors[i] = createAccessor(entry.getValue());
+
+                indices.put(names[i], i);
+
+                i++;
+            }
+
+            nameList = Collections.unmodifiableList(Arrays.asList(names));
+        }
+
+        public Object get(Object bean, int index) {
+            try {
+                return accessors[index].get(bean);
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+        }
+    }
+
+    // Property entry; reused by flyweight entry iterators
+    private static class PropertyEntry implements Entry<String, Object> {
+        private String key = null;
+        private Object value = null;
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Entry<?, ?>)) {
+                return false;
+            }
+
+            Entry<?, ?> entry = (Entry<?, ?>)object;
+
+            return key.equals(entry.getKey()) && (value == null ? entry.getValue() == null : value.equals(entry.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
     private Object bean;
-    private HashMap<Class<?>, HashMap<String, Method>> getterCache;
+    private boolean flyweight;
 
-    private HashMap<String, Method> getters;
+    private PropertySet propertySet;
 
     private Set<Entry<String, Object>> entrySet = new AbstractSet<Entry<String, Object>>() {
         @Override
         public int size() {
-            return getters.size();
+            return propertySet.names.length;
         }
 
         @Override
         public Iterator<Entry<String, Object>> iterator() {
             return new Iterator<Entry<String, Object>>() {
-                private Iterator<String> keys = getters.keySet().iterator();
+                private int index = 0;
+
+                private PropertyEntry entry = flyweight ? new PropertyEntry() : null;
 
                 @Override
                 public boolean hasNext() {
-                    return keys.hasNext();
+                    return index < propertySet.names.length;
                 }
 
                 @Override
                 public Entry<String, Object> next() {
-                    String key = keys.next();
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
 
-                    return new SimpleImmutableEntry<>(key, get(key));
+                    String key = propertySet.names[index];
+                    Object value = adapt(propertySet.get(bean, index), flyweight);
+
+                    index++;
+
+                    if (entry != null) {
+                        entry.key = key;
+                        entry.value = value;
+
+                        return entry;
+                    } else {
+                        return new SimpleImmutableEntry<>(key, value);
+                    }
                 }
             };
         }
     };
 
+    private static volatile ClassValue<PropertySet> propertySets = createPropertySets();
+
+    private static final Method getRecordComponentsMethod = getMethod("java.lang.Class", "getRecordComponents");
+    private static final Method getAccessorMethod = getMethod("java.lang.reflect.RecordComponent", "getAccessor");
+
     private static final String GET_PREFIX = "get";
     private static final String IS_PREFIX = "is";
 
@@ -173,62 +311,18 @@ public class BeanAdapter extends AbstractMap<String, Object> {
      * The source Bean.
      */
     public BeanAdapter(Object bean) {
-        this(bean, new HashMap<>());
+        this(bean, false);
     }
 
-    private BeanAdapter(Object bean, HashMap<Class<?>, HashMap<String, Method>> getterCache) {
+    private BeanAdapter(Object bean, boolean flyweight) {
         if (bean == null) {
             throw new IllegalArgumentException();
         }
 
         this.bean = bean;
-        this.getterCache = getterCache;
+        this.flyweight = flyweight;
 
-        Class<?> type = bean.getClass();
-
-        getters = getterCache.get(type);
-
-        if (getters == null) {
-            getters = new HashMap<>();
-
-            Method[] methods = type.getMethods();
-
-            for (int i = 0; i < methods.length; i++) {
-                Method method = methods[i];
-
-                if (type.isAssignableFrom(method.getDeclaringClass())) {
-                    String methodName = method.getName();
-
-                    String prefix;
-                    if (methodName.startsWith(GET_PREFIX)) {
-                        prefix = GET_PREFIX;
-                    } else if (methodName.startsWith(IS_PREFIX)) {
-                        prefix = IS_PREFIX;
-                    } else {
-                        prefix = null;
-                    }
-
-                    if (prefix != null)  {
-                        int j = prefix.length();
-                        int n = methodName.length();
-
-                        if (j < n && method.getParameterCount() == 0) {
-                            char c = methodName.charAt(j++);
-
-                            if (j == n || Character.isLowerCase(methodName.charAt(j))) {
-                                c = Character.toLowerCase(c);
-                            }
-
-                            String key = c + methodName.substring(j);
-
-                            getters.put(key, method);
-                        }
-                    }
-                }
-            }
-
-            getterCache.put(type, getters);
-        }
+        propertySet = getPropertySet(bean.getClass());
     }
 
     @Override
@@ -237,15 +331,11 @@ public class BeanAdapter extends AbstractMap<String, Object> {
             throw new IllegalArgumentException();
         }
 
-        Method method = getters.get(key);
+        Integer index = propertySet.indices.get(key);
 
         Object value;
-        if (method != null) {
-            try {
-                value = adapt(method.invoke(bean), getterCache);
-            } catch (InvocationTargetException | IllegalAccessException exception) {
-                throw new RuntimeException(exception);
-            }
+        if (index != null) {
+            value = adapt(propertySet.get(bean, index), flyweight);
         } else {
             value = null;
         }
@@ -258,6 +348,47 @@ public class BeanAdapter extends AbstractMap<String, Object> {
         return entrySet;
     }
 
+    /**
+     * Returns the source Bean.
+     *
+     * @return
+     * The source Bean.
+     */
+    public Object getBean() {
+        return bean;
+    }
+
+    /**
+     * Returns the names of the Bean's properties. The returned list is shared
+     * by all adapters for the Bean's type, and its order is the order in which
+     * the adapter's entries are returned.
+     *
+     * @return
+     * The property names.
+     */
+    public List<String> getPropertyNames() {
+        return propertySet.nameList;
+    }
+
+    /**
+     * Returns the value of a property by index. The value is adapted as
+     * described for {@link #adapt(Object)}.
+     *
+     * @param index
+     * The index of the property in the list returned by
+     * {@link #getPropertyNames()}.
+     *
+     * @return
+     * The adapted property value.
+     */
+    public Object getPropertyValue(int index) {
+        if (index < 0 || index >= propertySet.names.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return adapt(propertySet.get(bean, index), flyweight);
+    }
+
     /**
      * Adapts a value. If the value is <tt>null</tt> or an instance of one of
      * the following types, it is returned as-is:
@@ -283,11 +414,33 @@ public class BeanAdapter extends AbstractMap<String, Object> {
      * The adapted value.
      */
     public static <T> T adapt(Object value) {
-        return adapt(value, new HashMap<>());
+        return adapt(value, false);
     }
 
+    /**
+     * Adapts a value, optionally in flyweight mode. Values are adapted as
+     * described for {@link #adapt(Object)}. In flyweight mode, iterating a
+     * list adapter returns a single Bean adapter that is repointed at each
+     * successive element of the same type, and iterating the entries of a
+     * Bean adapter returns a single entry that is updated for each property.
+     * Flyweight mode avoids allocating an adapter per element when rendering
+     * large lists, but an element or entry is valid only until the iterator
+     * that returned it is advanced.
+     *
+     * @param <T> The expected type of the adapted value.
+     *
+     * @param value
+     * The value to adapt.
+     *
+     * @param flyweight
+     * <tt>true</tt> to adapt the value in flyweight mode; <tt>false</tt>,
+     * otherwise.
+     *
+     * @return
+     * The adapted value.
+     */
     @SuppressWarnings("unchecked")
-    private static <T> T adapt(Object value, HashMap<Class<?>, HashMap<String, Method>> getterCache) {
+    public static <T> T adapt(Object value, boolean flyweight) {
         if (!(value == null
             || value instanceof String
             || value instanceof Number
@@ -296,14 +449,235 @@ public class BeanAdapter extends AbstractMap<String, Object> {
             || value instanceof Date
             || value instanceof TemporalAccessor)) {
             if (value instanceof List<?>) {
-                value = new ListAdapter((List<Object>)value, getterCache);
+                value = new ListAdapter((List<Object>)value, flyweight);
             } else if (value instanceof Map<?, ?>) {
-                value = new MapAdapter((Map<Object, Object>)value, getterCache);
+                value = new MapAdapter((Map<Object, Object>)value, flyweight);
             } else {
-                value = new BeanAdapter(value, getterCache);
+                value = new BeanAdapter(value, flyweight);
             }
         }
 
         return (T)value;
     }
+
+    /**
+     * Discards the property metadata cached for all Bean types. Metadata is
+     * cached when a type is first adapted and is shared by all adapters; it
+     * does not prevent the type's class loader from being unloaded. Clearing
+     * the cache is only necessary when the properties of a previously adapted
+     * type may have changed.
+     */
+    public static void clearCache() {
+        propertySets = createPropertySets();
+    }
+
+    static PropertySet getPropertySet(Class<?> type) {
+        return propertySets.get(type);
+    }
+
+    private static ClassValue<PropertySet> createPropertySets() {
+        return new ClassValue<PropertySet>() {
+            @Override
+            protected PropertySet computeValue(Class<?> type) {
+                return new PropertySet(getGetters(type));
+            }
+        };
+    }
+
+    private static HashMap<String, Member> getGetters(Class<?> type) {
+        HashMap<String, Member> getters = new HashMap<>();
+
+        Method[] methods = type.getMethods();
+
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+
+            if (type.isAssignableFrom(method.getDeclaringClass())) {
+                String methodName = method.getName();
+
+                String prefix;
+                if (methodName.startsWith(GET_PREFIX)) {
+                    prefix = GET_PREFIX;
+                } else if (methodName.startsWith(IS_PREFIX)) {
+                    prefix = IS_PREFIX;
+                } else {
+                    prefix = null;
+                }
+
+                if (prefix != null)  {
+                    int j = prefix.length();
+                    int n = methodName.length();
+
+                    if (j < n && method.getParameterCount() == 0) {
+                        char c = methodName.charAt(j++);
+
+                        if (j == n || Character.isLowerCase(methodName.charAt(j))) {
+                            c = Character.toLowerCase(c);
+                        }
+
+                        String key = c + methodName.substring(j);
+
+                        getters.put(key, method);
+                    }
+                }
+            }
+        }
+
+        // Record components and public final fields are used when no getter
+        // defines a property of the same name; like getters, fields are only
+        // included if they are declared by the type itself
+        Method[] recordAccessors = getRecordAccessors(type);
+
+        for (int i = 0; i < recordAccessors.length; i++) {
+            Method method = recordAccessors[i];
+
+            if (!getters.containsKey(method.getName())) {
+                getters.put(method.getName(), method);
+            }
+        }
+
+        Field[] fields = type.getFields();
+
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+
+            int modifiers = field.getModifiers();
+
+            if (type.isAssignableFrom(field.getDeclaringClass())
+                && !Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)
+                && !getters.containsKey(field.getName())) {
+                getters.put(field.getName(), field);
+            }
+        }
+
+        return getters;
+    }
+
+    private static Method[] getRecordAccessors(Class<?> type) {
+        // Records are identified reflectively so the adapter can run on
+        // versions of Java that predate them
+        if (getRecordComponentsMethod == null) {
+            return new Method[0];
+        }
+
+        Object[] recordComponents;
+        try {
+            recordComponents = (Object[])getRecordComponentsMethod.invoke(type);
+        } catch (InvocationTargetException | IllegalAccessException exception) {
+            throw new RuntimeException(exception);
+        }
+
+        if (recordComponents == null) {
+            return new Method[0];
+        }
+
+        Method[] recordAccessors = new Method[recordComponents.length];
+
+        for (int i = 0; i < recordComponents.length; i++) {
+            try {
+                recordAccessors[i] = (Method)getAccessorMethod.invoke(recordComponents[i]);
+            } catch (InvocationTargetException | IllegalAccessException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+
+        return recordAccessors;
+    }
+
+    private static Method getMethod(String className, String methodName) {
+        try {
+            return Class.forName(className).getMethod(methodName);
+        } catch (ClassNotFoundException | NoSuchMethodException exception) {
+            return null;
+        }
+    }
+
+    private static Accessor createAccessor(Member member) {
+        if (member instanceof Field) {
+            return createAccessor((Field)member);
+        } else {
+            return createAccessor((Method)member);
+        }
+    }
+
+    private static Accessor createAccessor(final Field field) {
+        MethodHandle getter;
+        try {
+            getter = MethodHandles.lookup().unreflectGetter(field);
+        } catch (IllegalAccessException exception) {
+            return new Accessor() {
+                @Override
+                public Object get(Object bean) throws Throwable {
+                    return field.get(bean);
+                }
+            };
+        }
+
+        final MethodHandle handle = getter.asType(MethodType.methodType(Object.class, Object.class));
+
+        return new Accessor() {
+            @Override
+            public Object get(Object bean) throws Throwable {
+                return (Object)handle.invokeExact(bean);
+            }
+        };
+    }
+
+    private static Accessor createAccessor(final Method method) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        MethodHandle getter;
+        try {
+            getter = lookup.unreflect(method);
+        } catch (IllegalAccessException exception) {
+            getter = null;
+        }
+
+        // Getters that can't be unreflected are invoked via reflection
+        if (getter == null) {
+            return new Accessor() {
+                @Override
+                public Object get(Object bean) throws Throwable {
+                    try {
+                        return method.invoke(bean);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+                }
+            };
+        }
+
+        // Generate a direct accessor when the declaring class is visible to
+        // this class's loader
+        if (isVisible(method.getDeclaringClass())) {
+            try {
+                CallSite callSite = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Accessor.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    getter,
+                    getter.type().wrap());
+
+                return (Accessor)callSite.getTarget().invoke();
+            } catch (Throwable throwable) {
+                // No-op
+            }
+        }
+
+        final MethodHandle handle = getter.asType(MethodType.methodType(Object.class, Object.class));
+
+        return new Accessor() {
+            @Override
+            public Object get(Object bean) throws Throwable {
+                return (Object)handle.invokeExact(bean);
+            }
+        };
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, BeanAdapter.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException exception) {
+            return false;
+        }
+    }
 }
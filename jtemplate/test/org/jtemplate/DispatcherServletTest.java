@@ -0,0 +1,977 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class DispatcherServletTest extends AbstractTest {
+    // Output stream that accepts a fixed number of writes each time it becomes ready
+    private static class TestOutputStream extends ServletOutputStream {
+        public final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        public WriteListener writeListener = null;
+
+        private int capacity = 0;
+
+        public void setCapacity(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean isReady() {
+            return capacity > 0;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.writeListener = writeListener;
+        }
+
+        @Override
+        public void write(int b) {
+            outputStream.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (capacity == 0) {
+                throw new IllegalStateException();
+            }
+
+            outputStream.write(b, off, len);
+
+            capacity--;
+        }
+    }
+
+    // Result that records whether it has been closed
+    private static class TestResult extends ArrayList<Object> implements AutoCloseable {
+        private static final long serialVersionUID = 0;
+
+        public boolean closed = false;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // Enum parameter type
+    public enum TestEnum {
+        A,
+        B
+    }
+
+    // Parameter type created by a static factory method
+    public static class ValueOfType {
+        private String value;
+
+        private ValueOfType(String value) {
+            this.value = value;
+        }
+
+        public static ValueOfType valueOf(String value) {
+            return new ValueOfType(value);
+        }
+
+        @Override
+        public String toString() {
+            return "valueOf:" + value;
+        }
+    }
+
+    // Parameter type created by a constructor
+    public static class ConstructorType {
+        private String value;
+
+        public ConstructorType(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return "new:" + value;
+        }
+    }
+
+    // Servlet used to test request dispatching
+    public static class TestServlet extends DispatcherServlet {
+        private static final long serialVersionUID = 0;
+
+        public String value = null;
+
+        @RequestMethod("GET")
+        @ResponseMapping(name="servlet.txt", mimeType="text/plain", attachment=true)
+        public String getRoot() {
+            return "root";
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/a")
+        @ResponseMapping(name="servlet.txt", mimeType="text/plain", attachment=true)
+        public String getA() {
+            return "a" + getKeys();
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/a/?")
+        @ResponseMapping(name="servlet.txt", mimeType="text/plain", attachment=true)
+        public String getAKey() {
+            return "a?" + getKeys();
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/a/?/b/?")
+        public String getAKeyBKey() {
+            return "a?b?" + getKeys();
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/a/lit")
+        public String getALit() {
+            return "lit" + getKeys();
+        }
+
+        @RequestMethod("PATCH")
+        @ResourcePath("/a/lit")
+        public String patchALit() {
+            return "patch";
+        }
+
+        @RequestMethod("FOO")
+        @ResourcePath("/a/lit")
+        public String fooALit() {
+            return "foo";
+        }
+
+        // "Aa" and "BB" have the same hash code
+        @RequestMethod("GET")
+        @ResourcePath("/Aa")
+        public String getAa() {
+            return "Aa";
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/BB")
+        public String getBB() {
+            return "BB";
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/o")
+        public String getO0() {
+            return "o0";
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/o")
+        public String getO1(int x) {
+            return "o1:" + x;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/o")
+        public String getO2(int x, String y) {
+            return "o2:" + x + y;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/o")
+        public String getO3(String y, List<Integer> z) {
+            return "o3:" + y + z;
+        }
+
+        @RequestMethod("POST")
+        @ResourcePath("/upload")
+        public String upload(String name, URL file) {
+            return name + ":" + (file != null);
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/convert")
+        public String getConvert(TestEnum e, UUID u, BigDecimal b, Instant i, LocalDate d, Date t,
+            ValueOfType f, ConstructorType c, List<LocalDate> l) {
+            return Arrays.asList(e, u, b, i, d, (t == null) ? null : t.getTime(), f, c, l).toString();
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/unsupported")
+        public String getUnsupported(Object value) {
+            return "unsupported";
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/sum")
+        public double getSum(int a, long b, double c) {
+            return a + b + c;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/flag")
+        public boolean getFlag(boolean value) {
+            return !value;
+        }
+
+        @RequestMethod("DELETE")
+        @ResourcePath("/value")
+        public void deleteValue(String value) {
+            this.value = value;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/error")
+        public String getError() throws IOException {
+            throw new IOException("Error.");
+        }
+
+        // Handlers at this path define more parameter names than a mask can hold
+        @RequestMethod("GET")
+        @ResourcePath("/wide")
+        public String getWide(int a0, int a1, int a2, int a3, int a4, int a5, int a6, int a7, int a8, int a9,
+            int a10, int a11, int a12, int a13, int a14, int a15, int a16, int a17, int a18, int a19,
+            int a20, int a21, int a22, int a23, int a24, int a25, int a26, int a27, int a28, int a29,
+            int a30, int a31, int a32, int a33, int a34, int a35, int a36, int a37, int a38, int a39,
+            int a40, int a41, int a42, int a43, int a44, int a45, int a46, int a47, int a48, int a49,
+            int a50, int a51, int a52, int a53, int a54, int a55, int a56, int a57, int a58, int a59,
+            int a60, int a61, int a62, int a63, int a64) {
+            return "wide:" + (a0 + a64);
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/wide")
+        public String getNarrow0(int a0) {
+            return "narrow0:" + a0;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/wide")
+        public String getNarrow1(int a1) {
+            return "narrow1:" + a1;
+        }
+    }
+
+    // Servlet whose handlers can only be invoked via reflection, since the
+    // class is not public
+    static class NonPublicServlet extends DispatcherServlet {
+        private static final long serialVersionUID = 0;
+
+        public String value = null;
+
+        @RequestMethod("GET")
+        @ResourcePath("/sum")
+        public double getSum(int a, long b, double c) {
+            return a + b + c;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/flag")
+        public boolean getFlag(boolean value) {
+            return !value;
+        }
+
+        @RequestMethod("DELETE")
+        @ResourcePath("/value")
+        public void deleteValue(String value) {
+            this.value = value;
+        }
+
+        @RequestMethod("GET")
+        @ResourcePath("/error")
+        public String getError() throws IOException {
+            throw new IOException("Error.");
+        }
+    }
+
+    // Request with a fixed path, parameters, and file parts
+    private static class TestRequest implements InvocationHandler {
+        public final String method;
+        public final String pathInfo;
+
+        public String contextPath = "";
+        public String servletPath = "/test";
+
+        public final LinkedHashMap<String, String[]> parameters = new LinkedHashMap<>();
+        public final LinkedHashMap<String, String> files = new LinkedHashMap<>();
+
+        public TestRequest(String method, String pathInfo) {
+            this.method = method;
+            this.pathInfo = pathInfo;
+        }
+
+        public TestRequest parameter(String name, String... values) {
+            parameters.put(name, values);
+
+            return this;
+        }
+
+        public TestRequest file(String name) {
+            files.put(name, name + ".txt");
+
+            return this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) {
+            switch (method.getName()) {
+                case "getMethod": {
+                    return this.method;
+                }
+
+                case "getPathInfo": {
+                    return pathInfo;
+                }
+
+                case "getContextPath": {
+                    return contextPath;
+                }
+
+                case "getServletPath": {
+                    return servletPath;
+                }
+
+                case "getServerName": {
+                    return "localhost";
+                }
+
+                case "getServerPort": {
+                    return 80;
+                }
+
+                case "getScheme": {
+                    return "http";
+                }
+
+                case "getCharacterEncoding": {
+                    return "UTF-8";
+                }
+
+                case "getLocale": {
+                    return Locale.US;
+                }
+
+                case "getParameterNames": {
+                    return Collections.enumeration(parameters.keySet());
+                }
+
+                case "getParameterValues": {
+                    return parameters.get(arguments[0]);
+                }
+
+                case "getContentType": {
+                    return files.isEmpty() ? null : "multipart/form-data; boundary=x";
+                }
+
+                case "getParts": {
+                    ArrayList<Part> parts = new ArrayList<>();
+
+                    for (Map.Entry<String, String> entry : files.entrySet()) {
+                        parts.add(createPart(entry.getKey(), entry.getValue()));
+                    }
+
+                    return parts;
+                }
+
+                case "isAsyncSupported": {
+                    return false;
+                }
+
+                default: {
+                    return null;
+                }
+            }
+        }
+
+        private static Part createPart(final String name, final String submittedFileName) {
+            return createProxy(Part.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] arguments) throws IOException {
+                    switch (method.getName()) {
+                        case "getName": {
+                            return name;
+                        }
+
+                        case "getSubmittedFileName": {
+                            return submittedFileName;
+                        }
+
+                        case "write": {
+                            Files.write(Paths.get((String)arguments[0]), name.getBytes(StandardCharsets.UTF_8));
+
+                            return null;
+                        }
+
+                        default: {
+                            return null;
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    // Response that records its status, headers, and content
+    private static class TestResponse implements InvocationHandler {
+        public int status = HttpServletResponse.SC_OK;
+        public String contentType = null;
+
+        public final HashMap<String, String> headers = new HashMap<>();
+
+        public final TestOutputStream outputStream = new TestOutputStream();
+
+        public TestResponse() {
+            outputStream.setCapacity(Integer.MAX_VALUE);
+        }
+
+        public String getBody() {
+            return new String(outputStream.outputStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] arguments) {
+            switch (method.getName()) {
+                case "setStatus": {
+                    status = (Integer)arguments[0];
+
+                    return null;
+                }
+
+                case "setContentType": {
+                    contentType = (String)arguments[0];
+
+                    return null;
+                }
+
+                case "setHeader": {
+                    headers.put((String)arguments[0], (String)arguments[1]);
+
+                    return null;
+                }
+
+                case "getOutputStream": {
+                    return outputStream;
+                }
+
+                case "isCommitted": {
+                    return false;
+                }
+
+                default: {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private int completeCount = 0;
+
+    private ArrayList<String> messages = new ArrayList<>();
+
+    @Test
+    public void testRoutes() throws ServletException, IOException {
+        TestServlet servlet = initialize(new TestServlet());
+
+        Assert.assertEquals("\"root\"", service(servlet, "GET", null).getBody());
+        Assert.assertEquals("\"root\"", service(servlet, "GET", "").getBody());
+        Assert.assertEquals("\"root\"", service(servlet, "GET", "/").getBody());
+
+        // Empty segments are ignored
+        Assert.assertEquals("\"a[]\"", service(servlet, "GET", "/a").getBody());
+        Assert.assertEquals("\"a[]\"", service(servlet, "GET", "/a/").getBody());
+        Assert.assertEquals("\"a[]\"", service(servlet, "GET", "//a//").getBody());
+
+        // Literal segments take precedence over wildcards
+        Assert.assertEquals("\"lit[]\"", service(servlet, "GET", "/a/lit").getBody());
+        Assert.assertEquals("\"lit[]\"", service(servlet, "GET", "/a/lit/").getBody());
+        Assert.assertEquals("\"a?[]\"", service(servlet, "GET", "/a/?").getBody());
+
+        Assert.assertEquals("\"a?[x]\"", service(servlet, "GET", "/a/x").getBody());
+        Assert.assertEquals("\"a?[li]\"", service(servlet, "GET", "/a/li").getBody());
+        Assert.assertEquals("\"a?[lits]\"", service(servlet, "GET", "/a/lits").getBody());
+        Assert.assertEquals("\"a?b?[x, y]\"", service(servlet, "GET", "/a/x/b/y/").getBody());
+
+        // Segments with equal hash codes are matched by content
+        Assert.assertEquals("\"Aa\"", service(servlet, "GET", "/Aa").getBody());
+        Assert.assertEquals("\"BB\"", service(servlet, "GET", "/BB").getBody());
+
+        Assert.assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "GET", "/AaB").status);
+        Assert.assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "GET", "/b").status);
+        Assert.assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "GET", "/a/lit/x").status);
+        Assert.assertEquals(HttpServletResponse.SC_NOT_FOUND, service(servlet, "GET", "/a/x/b/y/c").status);
+
+        // Intermediate resources have no handlers
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, "GET", "/a/x/b").status);
+    }
+
+    @Test
+    public void testResponseMappings() throws ServletException, IOException {
+        TestServlet servlet = initialize(new TestServlet());
+
+        TestResponse response = service(servlet, "GET", "/a/~txt");
+
+        Assert.assertEquals("[a[]]", response.getBody());
+        Assert.assertEquals("text/plain;charset=UTF-8", response.contentType);
+        Assert.assertEquals("attachment; filename=\"a.txt\"", response.headers.get("Content-Disposition"));
+
+        // Path components following the response mapping are ignored
+        response = service(servlet, "GET", "/a/x/~txt/y");
+
+        Assert.assertEquals("[a?[x]]", response.getBody());
+        Assert.assertEquals("attachment; filename=\"x.txt\"", response.headers.get("Content-Disposition"));
+
+        // The file name defaults to the servlet path, context path, or server name
+        TestRequest request = new TestRequest("GET", "/~txt");
+
+        response = service(servlet, request);
+
+        Assert.assertEquals("[root]", response.getBody());
+        Assert.assertEquals("attachment; filename=\"test.txt\"", response.headers.get("Content-Disposition"));
+
+        request.servletPath = "";
+        request.contextPath = "/context";
+
+        Assert.assertEquals("attachment; filename=\"context.txt\"", service(servlet, request).headers.get("Content-Disposition"));
+
+        request.contextPath = "";
+
+        Assert.assertEquals("attachment; filename=\"localhost.txt\"", service(servlet, request).headers.get("Content-Disposition"));
+
+        Assert.assertEquals(HttpServletResponse.SC_NOT_ACCEPTABLE, service(servlet, "GET", "/a/~xyz").status);
+        Assert.assertEquals(HttpServletResponse.SC_NOT_ACCEPTABLE, service(servlet, "GET", "/a/lit/~txt").status);
+    }
+
+    @Test
+    public void testVerbs() throws ServletException, IOException {
+        TestServlet servlet = initialize(new TestServlet());
+
+        Assert.assertEquals("\"lit[]\"", service(servlet, "get", "/a/lit").getBody());
+        Assert.assertEquals("\"patch\"", service(servlet, "PATCH", "/a/lit").getBody());
+
+        // Custom verbs are not case-sensitive
+        Assert.assertEquals("\"foo\"", service(servlet, "FOO", "/a/lit").getBody());
+        Assert.assertEquals("\"foo\"", service(servlet, "foo", "/a/lit").getBody());
+
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, "PUT", "/a/lit").status);
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, "BAR", "/a/lit").status);
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, "PATCH", "/a").status);
+    }
+
+    @Test
+    public void testHandlerSelection() throws ServletException, IOException {
+        assumeParameterNames();
+
+        TestServlet servlet = initialize(new TestServlet());
+
+        // The handler with the fewest unmatched parameters is selected
+        Assert.assertEquals("\"o0\"", service(servlet, new TestRequest("GET", "/o")).getBody());
+        Assert.assertEquals("\"o1:1\"", service(servlet, new TestRequest("GET", "/o").parameter("x", "1")).getBody());
+        Assert.assertEquals("\"o2:1b\"", service(servlet, new TestRequest("GET", "/o").parameter("x", "1").parameter("y", "b")).getBody());
+        Assert.assertEquals("\"o3:b[1, 2]\"", service(servlet, new TestRequest("GET", "/o").parameter("y", "b").parameter("z", "1", "2")).getBody());
+        Assert.assertEquals("\"o3:null[3]\"", service(servlet, new TestRequest("GET", "/o").parameter("z", "3")).getBody());
+
+        // Ties are resolved in the order in which the handlers were discovered
+        String tie = getFirstMethodName(TestServlet.class, "getO2", "getO3");
+
+        String body = service(servlet, new TestRequest("GET", "/o").parameter("y", "b")).getBody();
+
+        Assert.assertEquals(tie.equals("getO2") ? "\"o2:0b\"" : "\"o3:b[]\"", body);
+
+        // Repeated requests use the memoized selection
+        Assert.assertEquals(body, service(servlet, new TestRequest("GET", "/o").parameter("y", "b")).getBody());
+
+        // Requests containing unknown names are rejected
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, new TestRequest("GET", "/o").parameter("q", "1")).status);
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, new TestRequest("GET", "/o").parameter("x", "1").parameter("q", "1")).status);
+    }
+
+    @Test
+    public void testFileHandlerSelection() throws ServletException, IOException {
+        assumeParameterNames();
+
+        TestServlet servlet = initialize(new TestServlet());
+
+        Assert.assertEquals("\"a:true\"", service(servlet, new TestRequest("POST", "/upload").parameter("name", "a").file("file")).getBody());
+        Assert.assertEquals("\"a:false\"", service(servlet, new TestRequest("POST", "/upload").parameter("name", "a")).getBody());
+
+        // A name may not be both a parameter and a file part
+        TestRequest request = new TestRequest("POST", "/upload").parameter("file", "a").file("file");
+
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, request).status);
+
+        request = new TestRequest("POST", "/upload").parameter("name", "a").file("name");
+
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, request).status);
+    }
+
+    @Test
+    public void testWideHandlerSelection() throws ServletException, IOException {
+        assumeParameterNames();
+
+        TestServlet servlet = initialize(new TestServlet());
+
+        Assert.assertEquals("\"narrow0:1\"", service(servlet, new TestRequest("GET", "/wide").parameter("a0", "1")).getBody());
+        Assert.assertEquals("\"narrow1:1\"", service(servlet, new TestRequest("GET", "/wide").parameter("a1", "1")).getBody());
+        Assert.assertEquals("\"wide:3\"", service(servlet, new TestRequest("GET", "/wide").parameter("a0", "1").parameter("a64", "2")).getBody());
+
+        String tie = getFirstMethodName(TestServlet.class, "getNarrow0", "getNarrow1");
+
+        Assert.assertEquals(tie.equals("getNarrow0") ? "\"narrow0:0\"" : "\"narrow1:0\"", service(servlet, new TestRequest("GET", "/wide")).getBody());
+
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, new TestRequest("GET", "/wide").parameter("a0", "1").parameter("q", "1")).status);
+        Assert.assertEquals(HttpServletResponse.SC_METHOD_NOT_ALLOWED, service(servlet, new TestRequest("GET", "/wide").parameter("a64", "1").file("a64")).status);
+    }
+
+    @Test
+    public void testParameterConversion() throws ServletException, IOException {
+        assumeParameterNames();
+
+        TestServlet servlet = initialize(new TestServlet());
+
+        TestRequest request = new TestRequest("GET", "/convert")
+            .parameter("e", "B")
+            .parameter("u", "123e4567-e89b-12d3-a456-426614174000")
+            .parameter("b", "1.50")
+            .parameter("i", "2020-01-02T03:04:05Z")
+            .parameter("d", "2020-01-02")
+            .parameter("t", "1000")
+            .parameter("f", "x")
+            .parameter("c", "y")
+            .parameter("l", "2020-01-02", "2020-01-03");
+
+        Assert.assertEquals("\"[B, 123e4567-e89b-12d3-a456-426614174000, 1.50, 2020-01-02T03:04:05Z, 2020-01-02, 1000, "
+            + "valueOf:x, new:y, [2020-01-02, 2020-01-03]]\"", service(servlet, request).getBody());
+
+        // Omitted arguments are null, and omitted lists are empty
+        Assert.assertEquals("\"[null, null, null, null, null, null, null, null, []]\"", service(servlet, "GET", "/convert").getBody());
+    }
+
+    @Test
+    public void testConversionFailure() throws ServletException, IOException {
+        assumeParameterNames();
+
+        TestServlet servlet = initialize(new TestServlet());
+
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, new TestRequest("GET", "/convert").parameter("b", "x")).status);
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, new TestRequest("GET", "/convert").parameter("e", "C")).status);
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, new TestRequest("GET", "/convert").parameter("l", "x")).status);
+
+        // Arguments of unsupported types can't be produced, even if omitted
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, new TestRequest("GET", "/unsupported").parameter("value", "x")).status);
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, "GET", "/unsupported").status);
+    }
+
+    @Test
+    public void testRegisteredParameterConverter() throws ServletException, IOException {
+        assumeParameterNames();
+
+        // Converters are resolved when the servlet is initialized
+        DispatcherServlet.registerParameterConverter(LocalDate.class, new ParameterConverter<LocalDate>() {
+            @Override
+            public LocalDate convert(String value) {
+                return LocalDate.ofEpochDay(Long.parseLong(value));
+            }
+        });
+
+        TestServlet servlet;
+        try {
+            servlet = initialize(new TestServlet());
+        } finally {
+            DispatcherServlet.unregisterParameterConverter(LocalDate.class);
+        }
+
+        TestRequest request = new TestRequest("GET", "/convert").parameter("d", "1").parameter("l", "0", "2");
+
+        Assert.assertEquals("\"[null, null, null, null, 1970-01-02, null, null, null, [1970-01-01, 1970-01-03]]\"", service(servlet, request).getBody());
+
+        // Servlets initialized after the converter is removed use the built-in conversion
+        servlet = initialize(new TestServlet());
+
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, request).status);
+    }
+
+    @Test
+    public void testHandlerInvocation() throws ServletException, IOException {
+        assumeParameterNames();
+
+        TestServlet servlet = initialize(new TestServlet());
+
+        Assert.assertEquals("6.5", service(servlet, new TestRequest("GET", "/sum").parameter("a", "1").parameter("b", "2").parameter("c", "3.5")).getBody());
+        Assert.assertEquals("false", service(servlet, new TestRequest("GET", "/flag").parameter("value", "true")).getBody());
+
+        TestResponse response = service(servlet, new TestRequest("DELETE", "/value").parameter("value", "abc"));
+
+        Assert.assertEquals(HttpServletResponse.SC_NO_CONTENT, response.status);
+        Assert.assertEquals("", response.getBody());
+        Assert.assertEquals("abc", servlet.value);
+
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, "GET", "/error").status);
+        Assert.assertEquals(Arrays.asList("Error executing method getError()."), messages);
+    }
+
+    @Test
+    public void testReflectiveHandlerInvocation() throws ServletException, IOException {
+        assumeParameterNames();
+
+        NonPublicServlet servlet = initialize(new NonPublicServlet());
+
+        Assert.assertEquals("6.5", service(servlet, new TestRequest("GET", "/sum").parameter("a", "1").parameter("b", "2").parameter("c", "3.5")).getBody());
+        Assert.assertEquals("true", service(servlet, new TestRequest("GET", "/flag")).getBody());
+
+        TestResponse response = service(servlet, new TestRequest("DELETE", "/value").parameter("value", "abc"));
+
+        Assert.assertEquals(HttpServletResponse.SC_NO_CONTENT, response.status);
+        Assert.assertEquals("abc", servlet.value);
+
+        Assert.assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, service(servlet, "GET", "/error").status);
+        Assert.assertEquals(Arrays.asList("Error executing method getError()."), messages);
+    }
+
+    @Test
+    public void testAsyncWriter() throws IOException {
+        TestResult result = createResult();
+
+        TestOutputStream outputStream = new TestOutputStream();
+
+        DispatcherServlet.AsyncWriter asyncWriter = createAsyncWriter(result);
+
+        asyncWriter.start(outputStream);
+
+        Assert.assertSame(asyncWriter, outputStream.writeListener);
+
+        // Toggle readiness until the response has been written
+        int n = 0;
+
+        while (completeCount == 0) {
+            outputStream.setCapacity(n % 3);
+
+            asyncWriter.onWritePossible();
+
+            n++;
+        }
+
+        Assert.assertTrue(n > 3);
+
+        StringWriter writer = new StringWriter();
+
+        new JSONEncoder(true).writeValue(result, writer);
+
+        Assert.assertEquals(writer.toString(), new String(outputStream.outputStream.toByteArray(), StandardCharsets.UTF_8));
+
+        Assert.assertTrue(result.closed);
+
+        asyncWriter.onComplete(null);
+
+        Assert.assertEquals(1, completeCount);
+    }
+
+    @Test
+    public void testAsyncWriterTimeout() throws IOException {
+        TestResult result = createResult();
+
+        TestOutputStream outputStream = new TestOutputStream();
+
+        DispatcherServlet.AsyncWriter asyncWriter = createAsyncWriter(result);
+
+        asyncWriter.start(outputStream);
+
+        outputStream.setCapacity(1);
+
+        asyncWriter.onWritePossible();
+
+        Assert.assertFalse(result.closed);
+
+        asyncWriter.onTimeout(null);
+
+        Assert.assertTrue(result.closed);
+        Assert.assertEquals(1, completeCount);
+
+        // Writes after completion are ignored
+        outputStream.setCapacity(1);
+
+        asyncWriter.onWritePossible();
+
+        Assert.assertEquals(1, completeCount);
+    }
+
+    @Test
+    public void testAsyncWriterError() {
+        TestResult result = createResult();
+
+        DispatcherServlet.AsyncWriter asyncWriter = createAsyncWriter(result);
+
+        asyncWriter.onError(new AsyncEvent(null, new IOException()));
+
+        Assert.assertTrue(result.closed);
+        Assert.assertEquals(1, completeCount);
+    }
+
+    private static TestResult createResult() {
+        TestResult result = new TestResult();
+
+        for (int i = 0; i < 5000; i++) {
+            result.add(mapOf(entry("a", i), entry("b", "abc")));
+        }
+
+        return result;
+    }
+
+    private DispatcherServlet.AsyncWriter createAsyncWriter(TestResult result) {
+        AsyncContext asyncContext = createProxy(AsyncContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) {
+                if (method.getName().equals("complete")) {
+                    completeCount++;
+                }
+
+                return null;
+            }
+        });
+
+        ServletContext servletContext = createProxy(ServletContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) {
+                return null;
+            }
+        });
+
+        JSONEncoder encoder = new JSONEncoder(true);
+
+        return new DispatcherServlet.AsyncWriter(asyncContext, encoder.createGenerator(result, Locale.getDefault()),
+            encoder.getCharset(), result, new HashMap<>(), servletContext, "test");
+    }
+
+    private static void assumeParameterNames() {
+        // Handlers are selected by parameter name, which requires the tests to
+        // be compiled with the -parameters flag
+        Method method;
+        try {
+            method = TestServlet.class.getMethod("getO1", Integer.TYPE);
+        } catch (NoSuchMethodException exception) {
+            throw new RuntimeException(exception);
+        }
+
+        Assume.assumeTrue(method.getParameters()[0].isNamePresent());
+    }
+
+    private static String getFirstMethodName(Class<?> type, String... names) {
+        List<String> nameList = Arrays.asList(names);
+
+        for (Method method : type.getMethods()) {
+            if (nameList.contains(method.getName())) {
+                return method.getName();
+            }
+        }
+
+        return null;
+    }
+
+    private <T extends DispatcherServlet> T initialize(T servlet) throws ServletException {
+        final ServletContext servletContext = createProxy(ServletContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) {
+                switch (method.getName()) {
+                    case "getMimeType": {
+                        return ((String)arguments[0]).endsWith(".txt") ? "text/plain" : null;
+                    }
+
+                    case "log": {
+                        messages.add((String)arguments[0]);
+
+                        return null;
+                    }
+
+                    default: {
+                        return null;
+                    }
+                }
+            }
+        });
+
+        ServletConfig servletConfig = createProxy(ServletConfig.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] arguments) {
+                switch (method.getName()) {
+                    case "getServletContext": {
+                        return servletContext;
+                    }
+
+                    case "getInitParameterNames": {
+                        return Collections.emptyEnumeration();
+                    }
+
+                    default: {
+                        return null;
+                    }
+                }
+            }
+        });
+
+        servlet.init(servletConfig);
+
+        return servlet;
+    }
+
+    private static TestResponse service(DispatcherServlet servlet, String method, String pathInfo) throws ServletException, IOException {
+        return service(servlet, new TestRequest(method, pathInfo));
+    }
+
+    private static TestResponse service(DispatcherServlet servlet, TestRequest request) throws ServletException, IOException {
+        TestResponse response = new TestResponse();
+
+        servlet.service(createProxy(HttpServletRequest.class, request), createProxy(HttpServletResponse.class, response));
+
+        return response;
+    }
+
+    private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(DispatcherServletTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+}
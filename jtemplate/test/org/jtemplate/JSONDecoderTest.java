@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.jtemplate.DispatcherServlet.listOf;
+import static org.jtemplate.DispatcherServlet.mapOf;
+import static org.jtemplate.DispatcherServlet.entry;
+
+public class JSONDecoderTest {
+    @Test
+    public void testString() throws IOException {
+        Assert.assertEquals("abcdéfg", decode("\"abcdéfg\""));
+        Assert.assertEquals("\"\\/\b\f\r\n\t\u00e9", decode("\"\\\"\\\\\\/\\b\\f\\r\\n\\t\\u00e9\""));
+    }
+
+    @Test
+    public void testNumber() throws IOException {
+        Assert.assertEquals(42, decode("42"));
+        Assert.assertEquals(-42, decode("-42"));
+        Assert.assertEquals(10000000000L, decode("10000000000"));
+        Assert.assertEquals(Long.MIN_VALUE, decode(String.valueOf(Long.MIN_VALUE)));
+        Assert.assertEquals(new BigInteger("123456789012345678901234567890"), decode("123456789012345678901234567890"));
+        Assert.assertEquals(1.5, decode("1.5"));
+        Assert.assertEquals(-2.5E-3, decode("-2.5e-3"));
+    }
+
+    @Test
+    public void testLiterals() throws IOException {
+        Assert.assertEquals(true, decode("true"));
+        Assert.assertEquals(false, decode(" false "));
+        Assert.assertNull(decode("null"));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Object value = mapOf(
+            entry("a", "abc"),
+            entry("b", 123),
+            entry("c", true),
+            entry("d", listOf(1, 2, 3.0, null)),
+            entry("e", mapOf(entry("x", 1), entry("y", listOf()), entry("z", mapOf())))
+        );
+
+        StringWriter writer = new StringWriter();
+
+        new JSONEncoder().writeValue(value, writer);
+
+        Assert.assertEquals(value, decode(writer.toString()));
+    }
+
+    @Test
+    public void testInputStream() throws IOException {
+        byte[] bytes = "[\"\u00e9\ud83d\ude00\"]".getBytes(StandardCharsets.UTF_8);
+
+        Assert.assertEquals(listOf("\u00e9\ud83d\ude00"), new JSONDecoder().readValue(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testDeepNesting() throws IOException {
+        int n = 100000;
+
+        StringBuilder textBuilder = new StringBuilder();
+
+        for (int i = 0; i < n; i++) {
+            textBuilder.append('[');
+        }
+
+        for (int i = 0; i < n; i++) {
+            textBuilder.append(']');
+        }
+
+        Object value = decode(textBuilder.toString());
+
+        for (int i = 0; i < n - 1; i++) {
+            value = ((List<?>)value).get(0);
+        }
+
+        Assert.assertEquals(Collections.emptyList(), value);
+    }
+
+    @Test
+    public void testInvalidDocuments() {
+        String[] documents = {
+            "", "[", "]", "{", "[1,]", "[,1]", "{\"a\"}", "{\"a\":}", "{\"a\":1,}", "{1:2}",
+            "[1 2]", "\"abc", "tru", "nul", "01", "1.", "-", "1e", "+1", ".5", "[1]]", "1 2", "\"\\x\""
+        };
+
+        for (String document : documents) {
+            try {
+                decode(document);
+
+                Assert.fail(document);
+            } catch (IOException exception) {
+                // No-op
+            }
+        }
+    }
+
+    private static Object decode(String text) throws IOException {
+        return new JSONDecoder().readValue(new StringReader(text));
+    }
+}
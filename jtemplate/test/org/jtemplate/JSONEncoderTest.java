@@ -14,14 +14,30 @@
 
 package org.jtemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
+import org.jtemplate.beans.BeanAdapter;
+import org.jtemplate.beans.TestBean;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -44,6 +60,37 @@ public class JSONEncoderTest {
         Assert.assertTrue(encode(123.0).equals("123.0"));
     }
 
+    @Test
+    public void testNumberFormatting() throws IOException {
+        Assert.assertEquals("0", encode(0));
+        Assert.assertEquals("-123", encode(-123));
+        Assert.assertEquals(String.valueOf(Long.MIN_VALUE), encode(Long.MIN_VALUE));
+        Assert.assertEquals(String.valueOf(Long.MAX_VALUE), encode(Long.MAX_VALUE));
+        Assert.assertEquals("-9", encode(-9));
+        Assert.assertEquals("10", encode(10L));
+        Assert.assertEquals("[1,-20,300]", encode(new long[] {1, -20, 300}).replaceAll("\\s", ""));
+        Assert.assertEquals("-0.0", encode(-0.0));
+        Assert.assertEquals("-42.0", encode(-42.0));
+        Assert.assertEquals("1.0E7", encode(1e7));
+        Assert.assertEquals("0.1", encode(0.1));
+        Assert.assertEquals("2.1", encode(2.1F));
+        Assert.assertEquals("16.0", encode(16F));
+    }
+
+    @Test
+    public void testPrimitiveArrays() throws IOException {
+        Assert.assertEquals("[1,-2,3]", encode(new int[] {1, -2, 3}, true));
+        Assert.assertEquals("[]", encode(new long[] {}, true));
+        Assert.assertEquals("[1.5,2.0]", encode(new double[] {1.5, 2}, true));
+    }
+
+    @Test
+    public void testPrimitiveStreams() throws IOException {
+        Assert.assertEquals("[0,1,2]", encode(IntStream.range(0, 3), true));
+        Assert.assertEquals("[4,5]", encode(LongStream.of(4, 5), true));
+        Assert.assertEquals("[0.5]", encode(DoubleStream.of(0.5), true));
+    }
+
     @Test
     public void testBoolean() throws IOException {
         Assert.assertTrue(encode(true).equals("true"));
@@ -90,13 +137,173 @@ public class JSONEncoderTest {
         Assert.assertTrue(encode(dateTime).equals("\"" + dateTime.format(DateTimeFormatter.ISO_DATE_TIME) + "\""));
     }
 
+    @Test
+    public void testCompact() throws IOException {
+        String json = encode(mapOf(
+            entry("a", "a b"),
+            entry("b", listOf(1, listOf(), mapOf(entry("c", 2))))
+        ), true);
+
+        Assert.assertEquals("{\"a\":\"a b\",\"b\":[1,[],{\"c\":2}]}", json);
+    }
+
+    @Test
+    public void testBeanAdapter() throws IOException {
+        BeanAdapter beanAdapter = new BeanAdapter(new TestBean());
+
+        Assert.assertEquals(encode(new LinkedHashMap<>(beanAdapter), false), encode(beanAdapter, false));
+        Assert.assertEquals(encode(new LinkedHashMap<>(beanAdapter), true), encode(beanAdapter, true));
+    }
+
+    @Test
+    public void testOutputStream() throws IOException {
+        String value = "abc\u00e9\u4e2d\ud83d\ude00\n";
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        new JSONEncoder(true).writeValue(listOf(value), outputStream);
+
+        Assert.assertEquals("[\"abc\u00e9\u4e2d\ud83d\ude00\\n\"]", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testConcurrentEncoding() throws Exception {
+        JSONEncoder encoder = new JSONEncoder();
+
+        Object value = listOf(mapOf(entry("a", listOf(1, 2, listOf(3))), entry("b", mapOf(entry("c", "d")))), 4);
+
+        String expected = encode(value);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        try {
+            ArrayList<Future<Boolean>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        for (int j = 0; j < 1000; j++) {
+                            StringWriter writer = new StringWriter();
+
+                            encoder.writeValue(value, writer);
+
+                            if (!writer.toString().equals(expected)) {
+                                return false;
+                            }
+                        }
+
+                        return true;
+                    }
+                }));
+            }
+
+            for (Future<Boolean> future : futures) {
+                Assert.assertTrue(future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testSerializer() throws IOException {
+        JSONEncoder.registerSerializer(Point.class, new JSONSerializer<Point>() {
+            @Override
+            public void writeValue(Point point, Writer writer, Locale locale) throws IOException {
+                writer.write("[" + point.x + "," + point.y + "]");
+            }
+        });
+
+        try {
+            Assert.assertEquals("[[1,2],[3,4]]", encode(listOf(new Point(1, 2), new Point3D(3, 4)), true));
+        } finally {
+            JSONEncoder.unregisterSerializer(Point.class);
+        }
+
+        Assert.assertEquals("\"(1, 2)\"", encode(new Point(1, 2)));
+    }
+
+    @Test
+    public void testInterfaceSerializer() throws IOException {
+        JSONEncoder.registerSerializer(CharSequence.class, new JSONSerializer<CharSequence>() {
+            @Override
+            public void writeValue(CharSequence string, Writer writer, Locale locale) throws IOException {
+                writer.write(String.valueOf(string.length()));
+            }
+        });
+
+        try {
+            Assert.assertEquals("[3,2]", encode(listOf("abc", new StringBuilder("de")), true));
+        } finally {
+            JSONEncoder.unregisterSerializer(CharSequence.class);
+        }
+
+        Assert.assertEquals("[\"abc\"]", encode(listOf("abc"), true));
+    }
+
+    @Test
+    public void testGenerator() throws IOException {
+        HashMap<String, Object> map = new HashMap<>();
+
+        map.put("a", listOf(1, listOf(), mapOf()));
+        map.put(null, 2);
+        map.put("b", new int[] {3, 4});
+        map.put("c", mapOf(entry("d", new double[] {5.5})));
+
+        for (boolean compact : new boolean[] {false, true}) {
+            Object value = listOf("abc", map, LongStream.of(6, 7), null, true);
+
+            JSONEncoder encoder = new JSONEncoder(compact);
+
+            StringWriter writer = new StringWriter();
+
+            JSONEncoder.Generator generator = encoder.createGenerator(value, Locale.getDefault());
+
+            int count = 1;
+
+            while (generator.next(writer)) {
+                count++;
+            }
+
+            Assert.assertTrue(count > 1);
+
+            Assert.assertEquals(encode(listOf("abc", map, listOf(6, 7), null, true), compact), writer.toString());
+        }
+    }
+
     private String encode(Object value) throws IOException {
+        return encode(value, false);
+    }
+
+    private String encode(Object value, boolean compact) throws IOException {
         StringWriter writer = new StringWriter();
 
-        JSONEncoder encoder = new JSONEncoder();
+        JSONEncoder encoder = new JSONEncoder(compact);
 
         encoder.writeValue(value, writer);
 
         return writer.toString();
     }
+
+    public static class Point {
+        public final int x;
+        public final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%d, %d)", x, y);
+        }
+    }
+
+    public static class Point3D extends Point {
+        public Point3D(int x, int y) {
+            super(x, y);
+        }
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JSONReaderTest {
+    @Test
+    public void testEvents() throws IOException {
+        JSONReader reader = new JSONReader(new StringReader("{\"a\": [1, \"b\", true, null], \"c\": {}}"));
+
+        Assert.assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        Assert.assertEquals(JSONReader.Event.KEY, reader.next());
+        Assert.assertEquals("a", reader.getString());
+        Assert.assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+        Assert.assertEquals(2, reader.getDepth());
+        Assert.assertEquals(JSONReader.Event.NUMBER, reader.next());
+        Assert.assertEquals(1, reader.getNumber());
+        Assert.assertEquals(JSONReader.Event.STRING, reader.next());
+        Assert.assertEquals("b", reader.getString());
+        Assert.assertEquals(JSONReader.Event.BOOLEAN, reader.next());
+        Assert.assertTrue(reader.getBoolean());
+        Assert.assertEquals(JSONReader.Event.NULL, reader.next());
+        Assert.assertEquals(JSONReader.Event.END_ARRAY, reader.next());
+        Assert.assertEquals(JSONReader.Event.KEY, reader.next());
+        Assert.assertEquals("c", reader.getString());
+        Assert.assertEquals(JSONReader.Event.START_OBJECT, reader.next());
+        Assert.assertEquals(JSONReader.Event.END_OBJECT, reader.next());
+        Assert.assertEquals(JSONReader.Event.END_OBJECT, reader.next());
+        Assert.assertEquals(0, reader.getDepth());
+        Assert.assertNull(reader.next());
+    }
+
+    @Test
+    public void testLargeArray() throws IOException {
+        int n = 1000000;
+
+        // Generate the document on demand so that it is never held in memory
+        Reader source = new Reader() {
+            int i = -1;
+            String token = "[";
+            int position = 0;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                if (token == null) {
+                    return -1;
+                }
+
+                int count = 0;
+
+                while (count < len && token != null) {
+                    if (position == token.length()) {
+                        i++;
+
+                        if (i < n) {
+                            token = (i > 0 ? "," : "") + "\"" + i + "\"";
+                        } else if (i == n) {
+                            token = "]";
+                        } else {
+                            token = null;
+                            break;
+                        }
+
+                        position = 0;
+                    }
+
+                    cbuf[off + count++] = token.charAt(position++);
+                }
+
+                return count;
+            }
+
+            @Override
+            public void close() {
+                // No-op
+            }
+        };
+
+        JSONReader reader = new JSONReader(source);
+
+        Assert.assertEquals(JSONReader.Event.START_ARRAY, reader.next());
+
+        int count = 0;
+
+        JSONReader.Event event;
+        while ((event = reader.next()) == JSONReader.Event.STRING) {
+            Assert.assertEquals(String.valueOf(count), reader.getString());
+
+            count++;
+        }
+
+        Assert.assertEquals(JSONReader.Event.END_ARRAY, event);
+        Assert.assertEquals(n, count);
+    }
+}
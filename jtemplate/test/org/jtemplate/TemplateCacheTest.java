@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jtemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TemplateCacheTest extends AbstractTest {
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        TemplateCache cache = new TemplateCache();
+
+        Assert.assertEquals("(a)", encode(cache, "master1.txt", "a"));
+        Assert.assertEquals("(b)", encode(cache, "master1.txt", "b"));
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testSectionInclude() throws IOException {
+        TemplateCache cache = new TemplateCache();
+
+        Assert.assertEquals("[(a)(b)(c)]", encode(cache, "master2.txt", listOf("a", "b", "c")));
+
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(0, cache.getHitCount());
+
+        Assert.assertEquals("[(d)(e)]", encode(cache, "master2.txt", listOf("d", "e")));
+
+        Assert.assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testSizeEviction() throws IOException {
+        TemplateCache cache = new TemplateCache(1, Long.MAX_VALUE);
+
+        Assert.assertEquals("(a)", encode(cache, "master1.txt", "a"));
+
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals("{{.}}".length(), cache.getWeight());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws IOException {
+        TemplateCache cache = new TemplateCache(2, Long.MAX_VALUE);
+
+        Assert.assertEquals("a", encode(cache, "detail.txt", "a"));
+        Assert.assertEquals("b", encode(cache, "nested3.txt", "b"));
+        Assert.assertEquals("c", encode(cache, "detail.txt", "c"));
+        Assert.assertEquals("dabc", encode(cache, "surrogate.txt", "d"));
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+
+        Assert.assertEquals("e", encode(cache, "detail.txt", "e"));
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testLowWaterEviction() throws IOException {
+        TemplateCache cache = new TemplateCache(8, Long.MAX_VALUE);
+
+        File[] files = new File[9];
+
+        try {
+            for (int i = 0; i < files.length; i++) {
+                files[i] = File.createTempFile("eviction", ".txt");
+
+                Files.write(files[i].toPath(), "{{.}}".getBytes(StandardCharsets.UTF_8));
+
+                Assert.assertEquals("a", encode(cache, files[i].toURI().toURL(), "a"));
+            }
+
+            Assert.assertEquals(7, cache.getSize());
+            Assert.assertEquals(2, cache.getEvictionCount());
+
+            Assert.assertEquals("b", encode(cache, files[8].toURI().toURL(), "b"));
+
+            Assert.assertEquals(1, cache.getHitCount());
+        } finally {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i] != null) {
+                    files[i].delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWeightEviction() throws IOException {
+        TemplateCache cache = new TemplateCache(Integer.MAX_VALUE, 0);
+
+        Assert.assertEquals("a", encode(cache, "detail.txt", "a"));
+
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, cache.getWeight());
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        TemplateCache cache = new TemplateCache();
+
+        encode(cache, "master1.txt", "a");
+
+        cache.clear();
+
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testReload() throws IOException, InterruptedException {
+        File file = File.createTempFile("reload", ".txt");
+
+        try {
+            Files.write(file.toPath(), "[{{.}}]".getBytes(StandardCharsets.UTF_8));
+
+            TemplateCache cache = new TemplateCache();
+
+            cache.setReloadInterval(1);
+
+            URL url = file.toURI().toURL();
+
+            Assert.assertEquals("[a]", encode(cache, url, "a"));
+
+            Files.write(file.toPath(), "({{.}})".getBytes(StandardCharsets.UTF_8));
+
+            file.setLastModified(file.lastModified() + 1000);
+
+            Thread.sleep(10);
+
+            Assert.assertEquals("(a)", encode(cache, url, "a"));
+
+            Assert.assertEquals(1, cache.getMissCount());
+            Assert.assertEquals("({{.}})".length(), cache.getWeight());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReloadFailure() throws IOException, InterruptedException {
+        File file = File.createTempFile("reload", ".txt");
+
+        try {
+            Files.write(file.toPath(), "[{{.}}]".getBytes(StandardCharsets.UTF_8));
+
+            TemplateCache cache = new TemplateCache();
+
+            cache.setReloadInterval(1);
+
+            URL url = file.toURI().toURL();
+
+            Assert.assertEquals("[a]", encode(cache, url, "a"));
+
+            file.delete();
+
+            Thread.sleep(10);
+
+            Assert.assertEquals("[b]", encode(cache, url, "b"));
+
+            Thread.sleep(10);
+
+            Files.write(file.toPath(), "({{.}})".getBytes(StandardCharsets.UTF_8));
+
+            file.setLastModified(System.currentTimeMillis() + 1000);
+
+            Assert.assertEquals("(c)", encode(cache, url, "c"));
+
+            Assert.assertEquals(1, cache.getMissCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private String encode(TemplateCache cache, String name, Object value) throws IOException {
+        return encode(cache, getClass().getResource(name), value);
+    }
+
+    private String encode(TemplateCache cache, URL url, Object value) throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(url, "text/plain");
+
+        encoder.setCache(cache);
+
+        String result;
+        try (StringWriter writer = new StringWriter()) {
+            encoder.writeValue(value, writer);
+            result = writer.toString();
+        }
+
+        return result;
+    }
+}
@@ -14,8 +14,12 @@
 
 package org.jtemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -25,6 +29,7 @@ import java.time.format.FormatStyle;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 
@@ -251,6 +256,28 @@ public class TemplateEncoderTest extends AbstractTest {
         Assert.assertEquals("4.50", result);
     }
 
+    @Test
+    public void testLocalizedFormatModifier() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("format1.txt"), "text/plain");
+
+        for (int i = 0; i < 2; i++) {
+            String result;
+            try (StringWriter writer = new StringWriter()) {
+                encoder.writeValue(4.5, writer, Locale.GERMAN);
+                result = writer.toString();
+            }
+
+            Assert.assertEquals("4,50", result);
+
+            try (StringWriter writer = new StringWriter()) {
+                encoder.writeValue(4.5, writer, Locale.US);
+                result = writer.toString();
+            }
+
+            Assert.assertEquals("4.50", result);
+        }
+    }
+
     @Test
     public void testDateFormatModifiers() throws IOException {
         TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("format2.txt"), "text/plain");
@@ -316,6 +343,34 @@ public class TemplateEncoderTest extends AbstractTest {
         Assert.assertEquals("abc%3Adef%26xyz", result);
     }
 
+    @Test
+    public void testURLEscapeModifierEncoding() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("url.txt"), "text/plain");
+
+        String value = "a b+c/\u00e9\ud83d\ude00~.-_*";
+
+        String result;
+        try (StringWriter writer = new StringWriter()) {
+            encoder.writeValue(value, writer);
+            result = writer.toString();
+        }
+
+        Assert.assertEquals(URLEncoder.encode(value, "UTF-8"), result);
+    }
+
+    @Test
+    public void testEscapeModifierChain() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("chain.txt"), "text/plain");
+
+        String result;
+        try (StringWriter writer = new StringWriter()) {
+            encoder.writeValue("a<b c", writer);
+            result = writer.toString();
+        }
+
+        Assert.assertEquals("a%26lt%3Bb+c", result);
+    }
+
     @Test
     public void testMarkupEscapeModifier() throws IOException {
         TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("markup.txt"), "text/plain");
@@ -381,6 +436,19 @@ public class TemplateEncoderTest extends AbstractTest {
         Assert.assertEquals("[(a)(b)(c)]", result);
     }
 
+    @Test
+    public void testNestedInclude() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("nested1.txt"), "text/plain");
+
+        String result;
+        try (StringWriter writer = new StringWriter()) {
+            encoder.writeValue("abc", writer);
+            result = writer.toString();
+        }
+
+        Assert.assertEquals("<abc>", result);
+    }
+
     @Test
     public void testRecursion() throws IOException {
         TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("recursion.txt"), "text/plain");
@@ -498,4 +566,112 @@ public class TemplateEncoderTest extends AbstractTest {
 
         Assert.assertEquals("ABCDEFG", result);
     }
+
+    @Test
+    public void testModifierReplacement() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("upper.txt"), "text/plain");
+
+        String result;
+        try (StringWriter writer = new StringWriter()) {
+            encoder.writeValue("abc", writer);
+            result = writer.toString();
+        }
+
+        Assert.assertEquals("ABC", result);
+
+        Modifier modifier = TemplateEncoder.getModifiers().put("case", new Modifier() {
+            @Override
+            public Object apply(Object value, String argument, Locale locale) {
+                return "[" + value + "]";
+            }
+        });
+
+        try {
+            try (StringWriter writer = new StringWriter()) {
+                encoder.writeValue("abc", writer);
+                result = writer.toString();
+            }
+
+            Assert.assertEquals("[abc]", result);
+        } finally {
+            TemplateEncoder.getModifiers().put("case", modifier);
+        }
+    }
+
+    @Test
+    public void testOutputStream() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("encoding.txt"), "text/plain");
+
+        String value = "\u00e9\ud83d\ude00";
+
+        String result;
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            encoder.writeValue(value, outputStream);
+            result = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        Assert.assertEquals("\u00bf" + value + "?", result);
+    }
+
+    @Test
+    public void testUnpairedSurrogate() throws IOException {
+        Charset[] charsets = {StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1};
+
+        for (Charset charset : charsets) {
+            TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("surrogate.txt"), "text/plain", charset);
+
+            String result;
+            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+                encoder.writeValue("x\ud83d", outputStream);
+                result = new String(outputStream.toByteArray(), charset);
+            }
+
+            Assert.assertEquals("x?abc", result);
+        }
+    }
+
+    @Test
+    public void testFlushInterval() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("section4.txt"), "text/plain");
+
+        encoder.setFlushInterval(10);
+
+        int[] flushCount = new int[1];
+
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushCount[0]++;
+            }
+        }) {
+            encoder.writeValue(Collections.nCopies(100, "x"), outputStream);
+        }
+
+        Assert.assertEquals(11, flushCount[0]);
+    }
+
+    @Test
+    public void testFlushThreshold() throws IOException {
+        TemplateEncoder encoder = new TemplateEncoder(getClass().getResource("section4.txt"), "text/plain");
+
+        encoder.setFlushThreshold(64);
+
+        int[] flushSize = new int[1];
+
+        int length;
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                if (flushSize[0] == 0) {
+                    flushSize[0] = size();
+                }
+            }
+        }) {
+            encoder.writeValue(Collections.nCopies(1000, "x"), outputStream);
+            length = outputStream.size();
+        }
+
+        Assert.assertEquals(3002, length);
+        Assert.assertEquals(64, flushSize[0]);
+    }
 }
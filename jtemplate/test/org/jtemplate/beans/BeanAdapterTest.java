@@ -16,11 +16,80 @@ package org.jtemplate.beans;
 
 import org.jtemplate.AbstractTest;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
 
 public class BeanAdapterTest extends AbstractTest {
+    public static class Point {
+        public final int x;
+        public final int y;
+
+        public int z = 0;
+
+        public static final Point ORIGIN = new Point(0, 0);
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getY() {
+            return -y;
+        }
+    }
+
+    public static class Point3D extends Point {
+        public final int z;
+
+        public Point3D(int x, int y, int z) {
+            super(x, y);
+
+            this.z = z;
+        }
+
+        public int getSum() {
+            return x + y + z;
+        }
+    }
+
+    public static class Item {
+        private int id;
+
+        public Item(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+    }
+
+    public static class Label {
+        private String text;
+
+        public Label(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
     @Test
     public void testBeanAdapter() {
         BeanAdapter adapter = new BeanAdapter(new TestBean());
@@ -35,4 +104,171 @@ public class BeanAdapterTest extends AbstractTest {
             entry("g", mapOf(entry("h", mapOf(entry("i", true)))))
         ), adapter);
     }
+
+    @Test
+    public void testClearCache() {
+        BeanAdapter adapter = new BeanAdapter(new TestBean());
+
+        Object propertySet = BeanAdapter.getPropertySet(TestBean.class);
+
+        Assert.assertSame(propertySet, BeanAdapter.getPropertySet(TestBean.class));
+
+        BeanAdapter.clearCache();
+
+        Assert.assertNotSame(propertySet, BeanAdapter.getPropertySet(TestBean.class));
+
+        Assert.assertEquals(adapter, new BeanAdapter(new TestBean()));
+    }
+
+    @Test
+    public void testFlyweight() {
+        List<Item> items = Arrays.asList(new Item(0), new Item(1), new Item(2));
+
+        List<?> list = BeanAdapter.adapt(items, true);
+
+        Object first = null;
+
+        int i = 0;
+
+        for (Object element : list) {
+            if (first == null) {
+                first = element;
+            }
+
+            Assert.assertSame(first, element);
+            Assert.assertEquals(mapOf(entry("id", i)), element);
+
+            i++;
+        }
+
+        Assert.assertEquals(items.size(), i);
+
+        // Each iterator repoints its own view
+        Iterator<?> iterator1 = list.iterator();
+        Iterator<?> iterator2 = list.iterator();
+
+        Object element1 = iterator1.next();
+
+        iterator2.next();
+
+        Object element2 = iterator2.next();
+
+        Assert.assertNotSame(element1, element2);
+
+        Assert.assertEquals(mapOf(entry("id", 0)), element1);
+        Assert.assertEquals(mapOf(entry("id", 1)), element2);
+    }
+
+    @Test
+    public void testFlyweightTypeChange() {
+        List<?> list = BeanAdapter.adapt(Arrays.asList(new Item(0), new Item(1), new Label("a"), new Item(2), new Item(3)), true);
+
+        Iterator<?> iterator = list.iterator();
+
+        Object item0 = iterator.next();
+
+        Assert.assertEquals(mapOf(entry("id", 0)), item0);
+
+        Object item1 = iterator.next();
+
+        Assert.assertSame(item0, item1);
+        Assert.assertEquals(mapOf(entry("id", 1)), item1);
+
+        Object label = iterator.next();
+
+        Assert.assertNotSame(item1, label);
+        Assert.assertEquals(mapOf(entry("text", "a")), label);
+
+        // An element of a different type gets a new view; the previous view
+        // is not repointed at it
+        Object item2 = iterator.next();
+
+        Assert.assertNotSame(item1, item2);
+        Assert.assertNotSame(label, item2);
+        Assert.assertEquals(mapOf(entry("id", 2)), item2);
+
+        Object item3 = iterator.next();
+
+        Assert.assertSame(item2, item3);
+        Assert.assertEquals(mapOf(entry("id", 3)), item3);
+
+        Assert.assertEquals(mapOf(entry("id", 1)), item1);
+        Assert.assertEquals(mapOf(entry("text", "a")), label);
+
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testFields() {
+        BeanAdapter adapter = new BeanAdapter(new Point(1, 2));
+
+        Assert.assertEquals(mapOf(
+            entry("x", 1),
+            entry("y", -2)
+        ), adapter);
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        // Records can't be declared in the test sources, so one is compiled
+        // when the test is run on a version of Java that supports them
+        try {
+            Class.class.getMethod("getRecordComponents");
+        } catch (NoSuchMethodException exception) {
+            Assume.assumeNoException(exception);
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+        Assume.assumeNotNull(compiler);
+
+        File directory = Files.createTempDirectory("record").toFile();
+
+        try {
+            File file = new File(directory, "TestRecord.java");
+
+            Files.write(file.toPath(), ("public record TestRecord(int x, String y, double z) {\n"
+                + "    public double getZ() { return -z; }\n"
+                + "}\n").getBytes(StandardCharsets.UTF_8));
+
+            Assert.assertEquals(0, compiler.run(null, null, null, "-d", directory.getPath(), file.getPath()));
+
+            try (URLClassLoader classLoader = new URLClassLoader(new URL[] {directory.toURI().toURL()})) {
+                Class<?> type = classLoader.loadClass("TestRecord");
+
+                Object record = type.getConstructor(Integer.TYPE, String.class, Double.TYPE).newInstance(1, "abc", 2.0);
+
+                // Getters take precedence over record components
+                Assert.assertEquals(mapOf(
+                    entry("x", 1),
+                    entry("y", "abc"),
+                    entry("z", -2.0)
+                ), new BeanAdapter(record));
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testInheritedMembers() {
+        BeanAdapter adapter = new BeanAdapter(new Point3D(1, 2, 3));
+
+        Assert.assertEquals(mapOf(
+            entry("z", 3),
+            entry("sum", 6)
+        ), adapter);
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] files = file.listFiles();
+
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                delete(files[i]);
+            }
+        }
+
+        Files.delete(file.toPath());
+    }
 }